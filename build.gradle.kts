@@ -67,6 +67,8 @@ application {
 tasks {
     test {
         useJUnitPlatform()
+        // the parser benchmark in TextThreadDumpParserTests is opt-in: ./gradlew test -Pbenchmark
+        systemProperty("kindling.benchmark", project.hasProperty("benchmark"))
     }
 
     val cleanupJDeploy by registering(Delete::class) {
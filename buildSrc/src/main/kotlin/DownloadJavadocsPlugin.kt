@@ -5,8 +5,12 @@ import org.gradle.api.tasks.SourceSetContainer
 import org.gradle.kotlin.dsl.get
 import org.gradle.kotlin.dsl.getByName
 import org.jsoup.Jsoup
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
 import java.net.URI
 import java.net.URL
+import java.util.Arrays
 
 data class JavadocUrl(
     val base: String,
@@ -43,25 +47,24 @@ class DownloadJavadocsPlugin : Plugin<Project> {
             val javadocsDir = temporaryDir.resolve("javadocs")
 
             for ((version, urls) in toDownload) {
-                javadocsDir.resolve(version).apply {
-                    mkdirs()
-                    resolve("links.properties").printWriter().use { writer ->
-                        for (javadocUrl in urls) {
-                            javadocUrl.url.openStream().use { inputstream ->
-                                Jsoup.parse(inputstream, Charsets.UTF_8.name(), "")
-                                    .select("a[href]")
-                                    .forEach { a ->
-                                        val className = a.text()
-                                        val packageName = a.attr("title").substringAfterLast(' ')
+                // later javadocs win on duplicate class names, as they did when these were properties files
+                val links = LinkedHashMap<String, String>()
+                for (javadocUrl in urls) {
+                    javadocUrl.url.openStream().use { inputstream ->
+                        Jsoup.parse(inputstream, Charsets.UTF_8.name(), "")
+                            .select("a[href]")
+                            .forEach { a ->
+                                val className = a.text()
+                                val packageName = a.attr("title").substringAfterLast(' ')
 
-                                        writer.append(packageName).append('.').append(className)
-                                            .append('=').append(javadocUrl.base).append(a.attr("href"))
-                                            .appendLine()
-                                    }
+                                links["$packageName.$className"] = javadocUrl.base + a.attr("href")
                             }
-                        }
                     }
                 }
+                javadocsDir.resolve(version).apply {
+                    mkdirs()
+                    writeLinkIndex(links, resolve("links.idx"))
+                }
             }
 
             javadocsDir.resolve("versions.txt").printWriter().use { writer ->
@@ -76,3 +79,54 @@ class DownloadJavadocsPlugin : Plugin<Project> {
         target.extensions.getByName<SourceSetContainer>("sourceSets")["main"].resources.srcDir(downloadJavadocs)
     }
 }
+
+private val LINK_INDEX_MAGIC = "KCLI".toByteArray(Charsets.US_ASCII)
+private const val LINK_INDEX_VERSION = 1
+private const val LINK_INDEX_BLOCK_SIZE = 16
+
+/**
+ * Writes [links] (class name to URL) in the format read by `ClassLinkIndex`: entries sorted by the UTF-8 bytes of their
+ * class name, in blocks of [LINK_INDEX_BLOCK_SIZE]. Within a block each class name and URL is stored as the length of
+ * the prefix it shares with the previous entry's, plus the rest; the first entry of each block is stored whole, so the
+ * blocks can be binary searched. Keep the two in step.
+ */
+private fun writeLinkIndex(links: Map<String, String>, file: File) {
+    val entries = links.map { (className, url) -> className.toByteArray(Charsets.UTF_8) to url.toByteArray(Charsets.UTF_8) }
+        .sortedWith { a, b -> Arrays.compareUnsigned(a.first, b.first) }
+
+    val blockOffsets = mutableListOf<Int>()
+    val blocks = ByteArrayOutputStream()
+    DataOutputStream(blocks).use { out ->
+        var previousName = ByteArray(0)
+        var previousUrl = ByteArray(0)
+        entries.forEachIndexed { i, (name, url) ->
+            if (i % LINK_INDEX_BLOCK_SIZE == 0) {
+                blockOffsets += out.size()
+                previousName = ByteArray(0)
+                previousUrl = ByteArray(0)
+            }
+            out.writeFrontCoded(previousName, name)
+            out.writeFrontCoded(previousUrl, url)
+            previousName = name
+            previousUrl = url
+        }
+    }
+
+    DataOutputStream(file.outputStream().buffered()).use { out ->
+        out.write(LINK_INDEX_MAGIC)
+        out.writeInt(LINK_INDEX_VERSION)
+        out.writeInt(entries.size)
+        out.writeInt(LINK_INDEX_BLOCK_SIZE)
+        out.writeInt(blockOffsets.size)
+        blockOffsets.forEach(out::writeInt)
+        blocks.writeTo(out)
+    }
+}
+
+private fun DataOutputStream.writeFrontCoded(previous: ByteArray, value: ByteArray) {
+    val shared = Arrays.mismatch(previous, value).let { if (it < 0) value.size else it }
+    require(value.size <= 0xFFFF) { "${String(value)} is too long to index" }
+    writeShort(shared)
+    writeShort(value.size - shared)
+    write(value, shared, value.size - shared)
+}
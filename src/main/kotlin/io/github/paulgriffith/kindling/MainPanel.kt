@@ -11,6 +11,7 @@ import io.github.paulgriffith.kindling.core.Tool
 import io.github.paulgriffith.kindling.core.ToolOpeningException
 import io.github.paulgriffith.kindling.core.ToolPanel
 import io.github.paulgriffith.kindling.internal.FileTransferHandler
+import io.github.paulgriffith.kindling.thread.MultiThreadViewer
 import io.github.paulgriffith.kindling.utils.Action
 import io.github.paulgriffith.kindling.utils.FlatScrollPane
 import io.github.paulgriffith.kindling.utils.TabStrip
@@ -50,6 +51,14 @@ class MainPanel(empty: Boolean) : JPanel(MigLayout("ins 6, fill")) {
         }
     }
 
+    private val folderChooser = JFileChooser(Kindling.homeLocation).apply {
+        fileSelectionMode = JFileChooser.DIRECTORIES_ONLY
+
+        Kindling.addThemeChangeListener {
+            updateUI()
+        }
+    }
+
     private val openAction = Action(
         name = "Open...",
     ) {
@@ -78,6 +87,20 @@ class MainPanel(empty: Boolean) : JPanel(MigLayout("ins 6, fill")) {
                         },
                     )
                 }
+                addSeparator()
+                add(
+                    Action(
+                        name = "Watch Thread Dump Folder...",
+                        description = "Open every thread dump in a folder, and keep adding new ones as they're written",
+                    ) {
+                        if (folderChooser.showOpenDialog(this@MainPanel) == JFileChooser.APPROVE_OPTION) {
+                            val folder = folderChooser.selectedFile
+                            openOrError(MultiThreadViewer.title, folder.toString()) {
+                                MultiThreadViewer.watch(folder.toPath())
+                            }
+                        }
+                    },
+                )
             },
         )
         add(
@@ -2,19 +2,120 @@ package io.github.paulgriffith.kindling.cache
 
 import io.github.paulgriffith.kindling.utils.Column
 import io.github.paulgriffith.kindling.utils.ColumnList
+import io.github.paulgriffith.kindling.utils.EDT_SCOPE
+import io.github.paulgriffith.kindling.utils.PagedTableModel
+import io.github.paulgriffith.kindling.utils.toList
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import org.intellij.lang.annotations.Language
 import org.jdesktop.swingx.renderer.DefaultTableRenderer
-import javax.swing.table.AbstractTableModel
+import java.sql.Connection
+
+/**
+ * Every entry in a cache's `datastore_data`, in id order, without loading them all into memory. Pages are fetched by
+ * id as the table scrolls, and filtering by schema is done in the query, so only the count has to visit every row.
+ */
+class CacheModel(private val connection: Connection) : PagedTableModel<CacheEntry>() {
+    /**
+     * The schemas being shown, or `null` for every entry (including any whose schema is missing).
+     */
+    @Volatile
+    private var schemaIds: List<Int>? = null
+
+    private var filterGeneration = 0
+
+    init {
+        filter(null)
+    }
 
-class CacheModel(private val entries: List<CacheEntry>) : AbstractTableModel() {
     override fun getColumnName(column: Int): String = CacheColumns[column].header
-    override fun getRowCount(): Int = entries.size
     override fun getColumnCount(): Int = size
-    override fun getValueAt(row: Int, column: Int): Any? = get(row, CacheColumns[column])
+    override fun getValueAt(row: CacheEntry, column: Int): Any? = CacheColumns[column].getValue(row)
     override fun getColumnClass(column: Int): Class<*> = CacheColumns[column].clazz
 
-    operator fun <T> get(row: Int, column: Column<CacheEntry, T>): T {
-        return entries[row].let { info ->
-            column.getValue(info)
+    /**
+     * The value of [column] at [row], or `null` if that row hasn't been fetched yet.
+     */
+    operator fun <T> get(row: Int, column: Column<CacheEntry, T>): T? {
+        return this[row]?.let { entry ->
+            column.getValue(entry)
+        }
+    }
+
+    /**
+     * Shows only entries in [schemaIds] (or every entry, for `null`), once they've been counted.
+     */
+    fun filter(schemaIds: List<Int>?) {
+        val requested = ++filterGeneration
+        BACKGROUND.launch {
+            val count = if (schemaIds?.isEmpty() == true) 0 else count(schemaIds)
+            EDT_SCOPE.launch {
+                if (requested == filterGeneration) {
+                    this@CacheModel.schemaIds = schemaIds
+                    reset(count)
+                }
+            }
+        }
+    }
+
+    @Suppress("SqlNoDataSourceInspection", "SqlResolve")
+    private fun count(schemaIds: List<Int>?): Int {
+        @Language("HSQLDB")
+        val query = "SELECT COUNT(*) FROM datastore_data data WHERE ${schemaIds.predicate()}"
+        return connection.prepareStatement(query).use { statement ->
+            schemaIds?.forEachIndexed { i, id -> statement.setInt(i + 1, id) }
+            statement.executeQuery().use { resultSet ->
+                resultSet.next()
+                resultSet.getInt(1)
+            }
+        }
+    }
+
+    @Suppress("SqlNoDataSourceInspection", "SqlResolve")
+    override fun fetchPage(page: Int, previous: List<CacheEntry>?): List<CacheEntry> {
+        val schemaIds = schemaIds
+        val last = previous?.lastOrNull()
+
+        // carry on from the page before when we can; jumping straight to a page has to skip everything before it
+        val keyset = if (last != null) "AND data.id > ?" else ""
+        val offset = if (last != null) "" else "OFFSET ?"
+
+        @Language("HSQLDB")
+        val query = """
+            SELECT
+                data.id,
+                data.schemaid,
+                schema.signature AS name,
+                data.t_stamp,
+                data.attemptcount,
+                data.data_count
+            FROM
+                datastore_data data
+                LEFT JOIN datastore_schema schema ON schema.id = data.schemaid
+            WHERE ${schemaIds.predicate()} $keyset
+            ORDER BY data.id
+            LIMIT $pageSize $offset
+        """.trimIndent()
+
+        return connection.prepareStatement(query).use { statement ->
+            var parameter = 1
+            schemaIds?.forEach { id -> statement.setInt(parameter++, id) }
+            if (last != null) {
+                statement.setInt(parameter, last.id)
+            } else {
+                statement.setLong(parameter, page.toLong() * pageSize)
+            }
+            statement.executeQuery().toList { resultSet ->
+                CacheEntry(
+                    id = resultSet.getInt("id"),
+                    schemaId = resultSet.getInt("schemaid"),
+                    schemaName = resultSet.getString("name") ?: "null",
+                    timestamp = resultSet.getString("t_stamp"),
+                    attemptCount = resultSet.getInt("attemptcount"),
+                    dataCount = resultSet.getInt("data_count"),
+                )
+            }
         }
     }
 
@@ -36,5 +137,14 @@ class CacheModel(private val entries: List<CacheEntry>) : AbstractTableModel() {
             },
             value = CacheEntry::schemaName,
         )
+
+        private val BACKGROUND = CoroutineScope(Dispatchers.IO)
+
+        /**
+         * A `WHERE` clause for [this] schema ids, with a parameter for each.
+         */
+        private fun List<Int>?.predicate(): String {
+            return if (this == null) "TRUE" else "data.schemaid IN (${joinToString { "?" }})"
+        }
     }
 }
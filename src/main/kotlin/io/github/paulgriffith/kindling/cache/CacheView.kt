@@ -15,17 +15,14 @@ import io.github.paulgriffith.kindling.core.Tool
 import io.github.paulgriffith.kindling.core.ToolOpeningException
 import io.github.paulgriffith.kindling.core.ToolPanel
 import io.github.paulgriffith.kindling.utils.Action
-import io.github.paulgriffith.kindling.utils.EDT_SCOPE
 import io.github.paulgriffith.kindling.utils.FlatScrollPane
 import io.github.paulgriffith.kindling.utils.ReifiedJXTable
 import io.github.paulgriffith.kindling.utils.getLogger
 import io.github.paulgriffith.kindling.utils.getValue
 import io.github.paulgriffith.kindling.utils.jFrame
+import io.github.paulgriffith.kindling.utils.runWithProgress
 import io.github.paulgriffith.kindling.utils.selectedRowIndices
 import io.github.paulgriffith.kindling.utils.toList
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
 import net.lingala.zip4j.ZipFile
 import org.hsqldb.jdbc.JDBCDataSource
 import org.intellij.lang.annotations.Language
@@ -41,53 +38,84 @@ import javax.swing.JLabel
 import javax.swing.JSplitPane
 import javax.swing.SwingConstants
 import javax.swing.table.DefaultTableModel
-import kotlin.io.path.CopyActionResult
 import kotlin.io.path.ExperimentalPathApi
-import kotlin.io.path.copyToRecursively
+import kotlin.io.path.deleteRecursively
 import kotlin.io.path.extension
 import kotlin.io.path.name
 import kotlin.io.path.nameWithoutExtension
+import kotlin.io.path.outputStream
 
 private const val TRANSACTION_GROUP_DATA = "Transaction Group Data"
 
 @OptIn(ExperimentalPathApi::class)
 class CacheView(private val path: Path) : ToolPanel() {
-    private val tempDirectory: Path = Files.createTempDirectory(path.nameWithoutExtension)
-
-    private val dbName = when (path.extension) {
-        "zip" -> run {
-            LOGGER.debug("Exploding to $tempDirectory")
-            ZipFile(path.toFile()).run {
-                extractAll(tempDirectory.toString())
-                fileHeaders.first { !it.isDirectory }.fileName.substringBeforeLast('.')
-            }
+    /**
+     * Only created for zips; a cache on disk is opened where it is.
+     */
+    private var tempDirectory: Path? = null
+
+    /**
+     * The database's path, without any extension; HSQLDB finds the rest of the files from there.
+     */
+    private val database: Path = when (path.extension) {
+        "zip" -> ZipFile(path.toFile()).use { zipFile -> extractDatabase(zipFile) }
+        in CacheViewer.extensions -> path.resolveSibling(path.nameWithoutExtension)
+        else -> throw ToolOpeningException(".${path.extension} files not supported.")
+    }.also { database ->
+        LOGGER.trace("database: $database")
+    }
+
+    /**
+     * Extracts just the database's own files, skipping whatever else is in the zip.
+     */
+    private fun extractDatabase(zipFile: ZipFile): Path {
+        val script = zipFile.fileHeaders.firstOrNull { !it.isDirectory && it.fileName.endsWith(".script") }
+            ?: throw ToolOpeningException("No cache database found in ${path.name}")
+        val dbName = script.fileName.substringBeforeLast('.')
+        val headers = zipFile.fileHeaders.filter { header ->
+            header.fileName.substringBeforeLast('.') == dbName &&
+                header.fileName.substringAfterLast('.') in extractedExtensions
         }
 
-        in CacheViewer.extensions -> run {
-            path.parent.copyToRecursively(
-                target = tempDirectory,
-                followLinks = false,
-                copyAction = { source: Path, target: Path ->
-                    if (source.extension in cacheFileExtensions) {
-                        source.copyToIgnoringExistingDirectory(target, false)
+        val directory = Files.createTempDirectory(path.nameWithoutExtension).also { tempDirectory = it }
+        // entries are flattened into the temp directory, so nothing in the zip can be written outside it
+        val database = directory.resolve(dbName.substringAfterLast('/'))
+        LOGGER.debug("Extracting {} to {}", headers.map { it.fileName }, directory)
+
+        val total = headers.sumOf { it.uncompressedSize } / EXTRACT_STEP_BYTES
+        runWithProgress("Extracting ${path.name}", total.toInt() + headers.size) { step ->
+            for (header in headers) {
+                val target = database.resolveSibling(header.fileName.substringAfterLast('/'))
+                zipFile.getInputStream(header).use { input ->
+                    target.outputStream().use { output ->
+                        val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
+                        var sinceStep = 0L
+                        while (true) {
+                            val read = input.read(buffer)
+                            if (read < 0) break
+                            output.write(buffer, 0, read)
+                            sinceStep += read
+                            if (sinceStep >= EXTRACT_STEP_BYTES) {
+                                sinceStep -= EXTRACT_STEP_BYTES
+                                step(target.name)
+                            }
+                        }
                     }
-                    CopyActionResult.CONTINUE
-                },
-            )
-            path.nameWithoutExtension
+                }
+                step(target.name)
+            }
         }
-
-        else -> throw ToolOpeningException(".${path.extension} files not supported.")
-    }.also { dbName ->
-        LOGGER.trace("dbName: $dbName")
+        return database
     }
 
     private val connection = JDBCDataSource().apply {
         setUrl(
             buildString {
                 append("jdbc:hsqldb:file:")
-                append(tempDirectory).append("/").append(dbName).append(";")
+                append(database).append(";")
                 append("create=").append(false).append(";")
+                // never writes to (or locks) the files, so a cache can be opened where it is, even from a live gateway
+                append("readonly=").append(true).append(";")
                 append("shutdown=").append(true).append(";")
             }.also { url ->
                 LOGGER.trace("JDBC URL: {}", url)
@@ -99,6 +127,7 @@ class CacheView(private val path: Path) : ToolPanel() {
 
     override fun removeNotify() = super.removeNotify().also {
         connection.close()
+        tempDirectory?.deleteRecursively()
     }
 
     @Suppress("SqlNoDataSourceInspection", "SqlResolve")
@@ -148,34 +177,6 @@ class CacheView(private val path: Path) : ToolPanel() {
             )
         }
 
-    @Suppress("SqlNoDataSourceInspection", "SqlResolve")
-    @Language("HSQLDB")
-    private val data: List<CacheEntry> = connection.prepareStatement(
-        """
-            SELECT
-                data.id,
-                data.schemaid,
-                schema.signature AS name,
-                data.t_stamp,
-                data.attemptcount,
-                data.data_count
-            FROM
-                datastore_data data
-                LEFT JOIN datastore_schema schema ON schema.id = data.schemaid
-        """.trimIndent(),
-    ).use { statement ->
-        statement.executeQuery().toList { resultSet ->
-            CacheEntry(
-                id = resultSet.getInt("id"),
-                schemaId = resultSet.getInt("schemaid"),
-                schemaName = resultSet.getString("name") ?: "null",
-                timestamp = resultSet.getString("t_stamp"),
-                attemptCount = resultSet.getInt("attemptcount"),
-                dataCount = resultSet.getInt("data_count"),
-            )
-        }
-    }
-
     private fun SchemaRecord.toDetail(): Detail {
         return Detail(
             title = name,
@@ -188,8 +189,12 @@ class CacheView(private val path: Path) : ToolPanel() {
 
     private val details = DetailsPane()
     private val deserializedCache = mutableMapOf<Int, Detail>()
-    private val model = CacheModel(data)
-    private val table = ReifiedJXTable(model, CacheModel)
+    private val model = CacheModel(connection)
+    private val table = ReifiedJXTable(model, CacheModel).apply {
+        // rows are fetched in id order as they're scrolled to, so they can't be sorted here
+        isSortable = false
+    }
+    private val entryCount = JLabel("Counting entries...")
     private val schemaList = SchemaFilterList(schemaRecords)
 
     private val settingsMenu = FlatPopupMenu().apply {
@@ -327,7 +332,7 @@ class CacheView(private val path: Path) : ToolPanel() {
             *
             * We need the ID to get the table data and the schemaName to get the table columns and table name
         */
-        val id = table.model[table.selectedRow, CacheModel.Id]
+        val id = table.model[table.selectedRow, CacheModel.Id] ?: return@Action
         val raw = queryForData(id).deserialize()
         val originalData = raw as Array<*>
         val cols = (originalData[0] as Array<*>).size
@@ -339,7 +344,7 @@ class CacheView(private val path: Path) : ToolPanel() {
         }
 
         // Get table name and column names with schemaName
-        val schemaName = table.model[table.selectedRow, CacheModel.SchemaName]
+        val schemaName = table.model[table.selectedRow, CacheModel.SchemaName] ?: return@Action
         val matcher = columnNameRegex.find(schemaName) ?: return@Action
         val tableName by matcher.groups
         val columnsString by matcher.groups
@@ -357,7 +362,7 @@ class CacheView(private val path: Path) : ToolPanel() {
         name = path.name
         toolTipText = path.toString()
 
-        add(JLabel("${data.size} ${if (data.size == 1) "entry" else "entries"}"))
+        add(entryCount)
         add(settings, "right, wrap")
 
         add(mainSplitPane, "push, grow, span")
@@ -370,8 +375,8 @@ class CacheView(private val path: Path) : ToolPanel() {
 
         table.selectionModel.addListSelectionListener { event ->
             if (!event.valueIsAdjusting) {
-                details.events = table.selectedRowIndices()
-                    .map { index -> data[index].id }
+                details.events = table.selectedRowIndices().asList()
+                    .mapNotNull { index -> model[index]?.id }
                     .map { id ->
                         deserializedCache.getOrPut(id) {
                             val bytes = queryForData(id)
@@ -397,25 +402,31 @@ class CacheView(private val path: Path) : ToolPanel() {
         schemaList.checkBoxListSelectionModel.addListSelectionListener {
             updateData()
         }
+
+        model.addTableModelListener {
+            val count = model.rowCount
+            entryCount.text = "$count ${if (count == 1) "entry" else "entries"}"
+        }
     }
 
     private fun updateData() {
-        BACKGROUND.launch {
-            val filteredData = data.filter { entry ->
-                schemaRecords.find { it.id == entry.schemaId } in schemaList.checkBoxListSelectedValues
-            }
-            EDT_SCOPE.launch {
-                table.model = CacheModel(filteredData)
-            }
-        }
+        val selected = schemaList.checkBoxListSelectedValues.filterIsInstance<SchemaRecord>()
+        model.filter(
+            if (selected.size == schemaRecords.size) null else selected.map(SchemaRecord::id),
+        )
     }
 
     override val icon: Icon = CacheViewer.icon
 
     companion object {
-        private val BACKGROUND = CoroutineScope(Dispatchers.Default)
         val LOGGER = getLogger<CacheView>()
-        val cacheFileExtensions = listOf("data", "script", "log", "backup", "properties")
+
+        /**
+         * What HSQLDB needs to open a database read-only; the log holds changes made since the last checkpoint.
+         */
+        private val extractedExtensions = listOf("script", "properties", "data", "log")
+
+        private const val EXTRACT_STEP_BYTES = 1L shl 20
     }
 }
 
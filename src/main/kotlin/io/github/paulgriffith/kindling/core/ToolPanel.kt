@@ -1,10 +1,10 @@
 package io.github.paulgriffith.kindling.core
 
 import io.github.paulgriffith.kindling.utils.Action
+import io.github.paulgriffith.kindling.utils.ClassLinkIndex
 import io.github.paulgriffith.kindling.utils.FileExtensionFilter
 import io.github.paulgriffith.kindling.utils.FloatableComponent
 import io.github.paulgriffith.kindling.utils.PopupMenuCustomizer
-import io.github.paulgriffith.kindling.utils.Properties
 import io.github.paulgriffith.kindling.utils.exportToCSV
 import io.github.paulgriffith.kindling.utils.exportToXLSX
 import net.miginfocom.swing.MigLayout
@@ -73,10 +73,10 @@ abstract class ToolPanel(
             val fileFilter: FileFilter = FileExtensionFilter(description, listOf(extension))
         }
 
-        val classMapsByVersion by lazy {
+        val classLinksByVersion by lazy {
             val versions = requireNotNull(this::class.java.getResourceAsStream("/javadocs/versions.txt")).reader().readLines()
             versions.associateWith { version ->
-                Properties(requireNotNull(this::class.java.getResourceAsStream("/javadocs/$version/links.properties")))
+                requireNotNull(ClassLinkIndex.fromResource("/javadocs/$version/links.idx"))
             }
         }
     }
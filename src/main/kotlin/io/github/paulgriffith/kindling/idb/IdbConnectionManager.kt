@@ -0,0 +1,77 @@
+package io.github.paulgriffith.kindling.idb
+
+import org.sqlite.SQLiteDataSource
+import java.nio.file.Path
+import java.sql.Connection
+
+/**
+ * Hands out read-only connections to a single .idb file.
+ *
+ * Every connection opens the file as an immutable URI (no locking or change detection, since we never write to it)
+ * and is tuned for large sequential reads. Tabs that load in parallel should each [borrow] their own reader, or use
+ * [withReader] for one-off work; everything still open is closed along with the manager.
+ */
+class IdbConnectionManager(val path: Path) : AutoCloseable {
+    private val dataSource = SQLiteDataSource().apply {
+        url = "jdbc:sqlite:${path.toUri()}?mode=ro&immutable=1"
+        setReadOnly(true)
+    }
+
+    private val idle = ArrayDeque<Connection>()
+    private val opened = mutableListOf<Connection>()
+    private var closed = false
+
+    @Synchronized
+    fun borrow(): Connection {
+        check(!closed) { "Connection manager is closed" }
+        return idle.removeFirstOrNull() ?: open().also { opened += it }
+    }
+
+    @Synchronized
+    fun release(connection: Connection) {
+        if (closed) {
+            connection.close()
+        } else {
+            idle.addLast(connection)
+        }
+    }
+
+    inline fun <T> withReader(block: (Connection) -> T): T {
+        val connection = borrow()
+        try {
+            return block(connection)
+        } finally {
+            release(connection)
+        }
+    }
+
+    private fun open(): Connection {
+        return dataSource.connection.apply {
+            createStatement().use { statement ->
+                for (pragma in PRAGMAS) {
+                    statement.execute(pragma)
+                }
+            }
+        }
+    }
+
+    @Synchronized
+    override fun close() {
+        closed = true
+        idle.clear()
+        for (connection in opened) {
+            connection.close()
+        }
+        opened.clear()
+    }
+
+    companion object {
+        private val PRAGMAS = listOf(
+            "PRAGMA query_only = true",
+            "PRAGMA mmap_size = ${256L * 1024 * 1024}",
+            // negative values are in KiB, rather than pages
+            "PRAGMA cache_size = -${64 * 1024}",
+            "PRAGMA temp_store = MEMORY",
+        )
+    }
+}
@@ -1,26 +1,33 @@
 package io.github.paulgriffith.kindling.idb
 
 import com.formdev.flatlaf.extras.FlatSVGIcon
-import io.github.paulgriffith.kindling.core.Tool
+import io.github.paulgriffith.kindling.core.MultiTool
 import io.github.paulgriffith.kindling.core.ToolPanel
 import io.github.paulgriffith.kindling.idb.generic.GenericView
+import io.github.paulgriffith.kindling.idb.historian.Historian
+import io.github.paulgriffith.kindling.idb.historian.HistorianView
 import io.github.paulgriffith.kindling.idb.metrics.MetricsView
-import io.github.paulgriffith.kindling.log.Level
 import io.github.paulgriffith.kindling.log.LogPanel
-import io.github.paulgriffith.kindling.log.SystemLogsEvent
-import io.github.paulgriffith.kindling.utils.SQLiteConnection
 import io.github.paulgriffith.kindling.utils.TabStrip
 import io.github.paulgriffith.kindling.utils.toList
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.completeWith
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
 import java.nio.file.Path
-import java.sql.Connection
-import java.time.Instant
 import kotlin.io.path.name
 
 class IdbView(path: Path) : ToolPanel() {
-    private val connection = SQLiteConnection(path)
+    private val connections = IdbConnectionManager(path)
 
-    private val tables: List<String> = connection.metaData.getTables("", "", "", null).toList { rs ->
-        rs.getString(3)
+    private val tables: List<String> = connections.withReader { connection ->
+        connection.metaData.getTables("", "", "", null).toList { rs ->
+            rs.getString(3)
+        }
     }
 
     private val tabs = TabStrip().apply {
@@ -28,32 +35,53 @@ class IdbView(path: Path) : ToolPanel() {
         isTabsClosable = false
     }
 
+    private val prefetch = CoroutineScope(Dispatchers.IO + SupervisorJob())
+
+    /**
+     * Every supported tool, in tab order. Each one is prepared in the background as soon as the file is opened, and
+     * its tab shows a placeholder until then.
+     */
+    private val prepared: Map<IdbTool, CompletableDeferred<() -> ToolPanel>> = IdbTool.values()
+        .filter { tool -> tool.supports(tables) }
+        .associateWith { CompletableDeferred() }
+
     init {
         name = path.name
         toolTipText = path.toString()
 
         tabs.addTab(
             tabName = "Tables",
-            component = GenericView(connection),
+            component = GenericView(connections),
             tabTooltip = null,
             select = true,
         )
 
-        var addedTabs = 0
-        for (tool in IdbTool.values()) {
-            if (tool.supports(tables)) {
-                tabs.addLazyTab(
-                    tabName = tool.name,
-                ) {
-                    tool.open(connection)
-                }
-                addedTabs += 1
-            }
+        for ((tool, panel) in prepared) {
+            tabs.addDeferredTab(
+                tabName = tool.name,
+                content = panel,
+            )
         }
-        if (addedTabs == 1) {
+        if (prepared.size == 1) {
             tabs.selectedIndex = tabs.indices.last
         }
 
+        prefetch.launch {
+            // acquiring permits from a single coroutine means tools always start in priority order
+            val permits = Semaphore(PREFETCH_PARALLELISM)
+            for (tool in IdbTool.prefetchOrder) {
+                val panel = prepared[tool] ?: continue
+                permits.acquire()
+                launch {
+                    try {
+                        panel.completeWith(runCatching { tool.prepare(connections) })
+                    } finally {
+                        permits.release()
+                    }
+                }
+            }
+        }
+
         add(tabs, "push, grow")
     }
 
@@ -61,112 +89,76 @@ class IdbView(path: Path) : ToolPanel() {
 
     override fun removeNotify() {
         super.removeNotify()
-        connection.close()
+        prefetch.cancel()
+        prepared.values.forEach { it.cancel() }
+        connections.close()
+    }
+
+    companion object {
+        private const val PREFETCH_PARALLELISM = 2
     }
 }
 
 enum class IdbTool {
-    @Suppress("SqlResolve")
     Logs {
         override fun supports(tables: List<String>): Boolean = "logging_event" in tables
-        override fun open(connection: Connection): ToolPanel {
-            val stackTraces: Map<Int, List<String>> = connection.prepareStatement(
-                //language=sql
-                """
-                SELECT
-                    event_id,
-                    i,
-                    trace_line
-                FROM 
-                    logging_event_exception
-                ORDER BY
-                    event_id,
-                    i
-                """.trimIndent(),
-            ).executeQuery()
-                .toList { resultSet ->
-                    Pair(
-                        resultSet.getInt("event_id"),
-                        resultSet.getString("trace_line"),
-                    )
-                }.groupBy(keySelector = { it.first }, valueTransform = { it.second })
-
-            val mdcKeys: Map<Int, Map<String, String>> = connection.prepareStatement(
-                //language=sql
-                """
-                SELECT 
-                    event_id,
-                    mapped_key,
-                    mapped_value
-                FROM 
-                    logging_event_property
-                ORDER BY 
-                    event_id
-                """.trimIndent(),
-            ).executeQuery()
-                .toList { resultSet ->
-                    Triple(
-                        resultSet.getInt("event_id"),
-                        resultSet.getString("mapped_key"),
-                        resultSet.getString("mapped_value"),
-                    )
-                }.groupingBy { it.first }
-                .aggregateTo(mutableMapOf<Int, MutableMap<String, String>>()) { _, accumulator, element, _ ->
-                    val acc = accumulator ?: mutableMapOf()
-                    acc[element.second] = element.third ?: "null"
-                    acc
-                }
-
-            val events = connection.prepareStatement(
-                //language=sql
-                """
-                SELECT
-                       event_id,
-                       timestmp,
-                       formatted_message,
-                       logger_name,
-                       level_string,
-                       thread_name
-                FROM 
-                    logging_event
-                ORDER BY
-                    event_id
-                """.trimIndent(),
-            ).executeQuery()
-                .toList { resultSet ->
-                    val eventId = resultSet.getInt("event_id")
-                    SystemLogsEvent(
-                        timestamp = Instant.ofEpochMilli(resultSet.getLong("timestmp")),
-                        message = resultSet.getString("formatted_message"),
-                        logger = resultSet.getString("logger_name"),
-                        thread = resultSet.getString("thread_name"),
-                        level = Level.valueOf(resultSet.getString("level_string")),
-                        mdc = mdcKeys[eventId].orEmpty(),
-                        stacktrace = stackTraces[eventId].orEmpty(),
-                    )
+        override suspend fun prepare(connections: IdbConnectionManager): () -> ToolPanel {
+            val events = connections.withReader { connection ->
+                buildList {
+                    connection.forEachSystemLogsEvent(action = ::add)
                 }
-            return LogPanel(events)
+            }
+            return { LogPanel(events) }
         }
     },
     Metrics {
         override fun supports(tables: List<String>): Boolean = "SYSTEM_METRICS" in tables
-        override fun open(connection: Connection): ToolPanel = MetricsView(connection)
+        override suspend fun prepare(connections: IdbConnectionManager): () -> ToolPanel {
+            val data = MetricsView.load(mapOf(connections.path.name to connections))
+            return { MetricsView(data) }
+        }
+    },
+    Historian {
+        override fun supports(tables: List<String>): Boolean = "sqlth_te" in tables && "sqlth_partitions" in tables
+        override suspend fun prepare(connections: IdbConnectionManager): () -> ToolPanel {
+            val historian = Historian(connections)
+            return { HistorianView(historian) }
+        }
+    },
+    Images {
+        override fun supports(tables: List<String>): Boolean = tables.any { it.equals("IMAGES", ignoreCase = true) }
+        override suspend fun prepare(connections: IdbConnectionManager): () -> ToolPanel = ImagesPanel.prepare(connections)
     },
-//    Images {
-//        override fun supports(tables: List<String>): Boolean = "IMAGES" in tables
-//        override fun open(connection: Connection): ToolPanel = ImagesPanel(connection)
-//    }
     ;
 
     abstract fun supports(tables: List<String>): Boolean
 
-    abstract fun open(connection: Connection): ToolPanel
+    /**
+     * Does the slow part of opening this tool (reading from the database) in the calling coroutine, which should be on a
+     * background dispatcher. The returned function builds the actual panel, and must be called on the EDT.
+     */
+    abstract suspend fun prepare(connections: IdbConnectionManager): () -> ToolPanel
+
+    companion object {
+        private const val PREFETCH_ORDER_PROPERTY = "kindling.idb.prefetchOrder"
+
+        /**
+         * The order tools are prepared in when an idb is opened. Defaults to declaration order; a comma separated list
+         * of tool names in the `kindling.idb.prefetchOrder` system property moves those tools to the front.
+         */
+        val prefetchOrder: List<IdbTool> by lazy {
+            val configured = System.getProperty(PREFETCH_ORDER_PROPERTY).orEmpty()
+                .split(',')
+                .mapNotNull { name -> values().find { it.name.equals(name.trim(), ignoreCase = true) } }
+            (configured + values()).distinct()
+        }
+    }
 }
 
-object IdbViewer : Tool {
+object IdbViewer : MultiTool {
     override val title = "Idb File"
     override val description = ".idb (SQLite3) files"
     override val icon = FlatSVGIcon("icons/bx-hdd.svg")
     override val extensions = listOf("idb")
-    override fun open(path: Path): ToolPanel = IdbView(path)
+    override fun open(paths: List<Path>): ToolPanel = paths.singleOrNull()?.let(::IdbView) ?: MultiIdbView(paths)
 }
@@ -2,148 +2,311 @@ package io.github.paulgriffith.kindling.idb
 
 import com.inductiveautomation.ignition.gateway.images.ImageFormat
 import io.github.paulgriffith.kindling.core.ToolPanel
-import io.github.paulgriffith.kindling.utils.AbstractTreeNode
+import io.github.paulgriffith.kindling.utils.EDT_SCOPE
 import io.github.paulgriffith.kindling.utils.FlatScrollPane
-import io.github.paulgriffith.kindling.utils.TypedTreeNode
+import io.github.paulgriffith.kindling.utils.listCellRenderer
+import io.github.paulgriffith.kindling.utils.toFileSizeLabel
 import io.github.paulgriffith.kindling.utils.toList
-import io.github.paulgriffith.kindling.utils.treeCellRenderer
-import java.awt.Dimension
-import java.sql.Connection
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.launch
+import net.miginfocom.swing.MigLayout
+import org.jdesktop.swingx.JXSearchField
+import java.awt.Graphics
+import java.awt.Image
+import java.awt.RenderingHints
+import java.awt.image.BufferedImage
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
 import javax.imageio.ImageIO
+import javax.swing.DefaultListModel
 import javax.swing.Icon
 import javax.swing.ImageIcon
 import javax.swing.JLabel
-import javax.swing.JTree
-import javax.swing.tree.DefaultTreeModel
-import javax.swing.tree.TreeSelectionModel
+import javax.swing.JList
+import javax.swing.JPanel
+import javax.swing.JSplitPane
+import javax.swing.ListSelectionModel
+import javax.swing.SwingConstants
+import kotlin.math.max
+import kotlin.math.roundToInt
 
-class ImagesPanel(connection: Connection) : ToolPanel("ins 0, fill, hidemode 3") {
+class ImagesPanel private constructor(
+    private val connections: IdbConnectionManager,
+    private val images: List<ImageRow>,
+) : ToolPanel("ins 0, fill, hidemode 3") {
     override val icon: Icon? = null
 
-    init {
-        val tree = JTree(DefaultTreeModel(RootImageNode(connection)))
-        tree.isRootVisible = false
-        tree.cellRenderer = treeCellRenderer { _, value, _, _, _, _, _ ->
-            when (value) {
-                is ImageNode -> {
-                    text = value.userObject.path
-                    toolTipText = value.userObject.description
-                }
+    private val thumbnails = ThumbnailCache(MAX_CACHE_BYTES)
+    private val pending: MutableSet<Long> = ConcurrentHashMap.newKeySet()
+    private val failed: MutableSet<Long> = ConcurrentHashMap.newKeySet()
 
-                is ImageFolderNode -> {
-                    text = value.userObject
-                }
+    /**
+     * Rows drawn by the most recent full paint of the gallery. Queued thumbnails that a later paint no longer drew have
+     * been scrolled (or filtered) away, so they're skipped rather than decoded.
+     */
+    @Volatile
+    private var paintedRows: Set<Long> = emptySet()
+
+    @Volatile
+    private var fullPaints = 0
+    private var paintingRows: MutableSet<Long>? = null
+
+    private val decoding = CoroutineScope(DECODER + SupervisorJob())
+    private var previewJob: Job? = null
+
+    private val search = JXSearchField("Filter by path")
+
+    private val gallery = object : JList<ImageRow>() {
+        override fun paintComponent(g: Graphics) {
+            val fullPaint = g.clipBounds?.contains(visibleRect) ?: true
+            paintingRows = if (fullPaint) HashSet() else null
+            super.paintComponent(g)
+            paintingRows?.let { rows ->
+                paintedRows = rows
+                fullPaints += 1
             }
-            this
+            paintingRows = null
         }
-
-        add(FlatScrollPane(tree), "push, grow, w 30%!")
-        val imageDisplay = JLabel()
-        add(FlatScrollPane(imageDisplay), "push, grow")
-
-        tree.selectionModel.selectionMode = TreeSelectionModel.SINGLE_TREE_SELECTION
-        tree.addTreeSelectionListener {
-            val node = it.newLeadSelectionPath?.lastPathComponent as? AbstractTreeNode
-            imageDisplay.icon = if (node is ImageNode) {
-                runCatching {
-                    val data = node.userObject.data
-                    val readers = ImageIO.getImageReadersByFormatName(node.userObject.type.name)
-                    val image = readers.asSequence().firstNotNullOfOrNull { reader ->
-                        ImageIO.createImageInputStream(data.inputStream())?.use { iis ->
-                            reader.input = iis
-                            reader.read(
-                                0,
-                                reader.defaultReadParam.apply {
-                                    sourceRenderSize = Dimension(200, 200)
-                                },
-                            )
-                        }
-                    }
-                    image?.let(::ImageIcon)
-                }.getOrNull()
-            } else {
+    }.apply {
+        layoutOrientation = JList.HORIZONTAL_WRAP
+        visibleRowCount = -1
+        // fixed cell sizes keep the list from measuring every renderer, which is what makes scrolling smooth
+        fixedCellWidth = THUMBNAIL_SIZE + 24
+        fixedCellHeight = THUMBNAIL_SIZE + 32
+        selectionMode = ListSelectionModel.SINGLE_SELECTION
+        cellRenderer = listCellRenderer<ImageRow> { _, value, _, _, _ ->
+            horizontalAlignment = SwingConstants.CENTER
+            horizontalTextPosition = SwingConstants.CENTER
+            verticalTextPosition = SwingConstants.BOTTOM
+            text = value.path.substringAfterLast('/')
+            toolTipText = value.path
+            paintingRows?.add(value.rowId)
+            icon = thumbnails[value.rowId] ?: run {
+                requestThumbnail(value)
                 null
             }
         }
     }
-}
 
-private data class ImageNode(override val userObject: ImageRow) : TypedTreeNode<ImageRow>()
+    private val preview = JLabel().apply {
+        horizontalAlignment = SwingConstants.CENTER
+    }
+    private val previewDetails = JLabel()
 
-private data class ImageRow(
-    val path: String,
-    val type: ImageFormat,
-    val description: String?,
-    val data: ByteArray,
-) {
-    override fun equals(other: Any?): Boolean {
-        if (this === other) return true
-        if (javaClass != other?.javaClass) return false
+    init {
+        gallery.model = DefaultListModel<ImageRow>().apply { addAll(images) }
 
-        other as ImageRow
+        search.addActionListener {
+            val text = search.text.orEmpty()
+            gallery.model = DefaultListModel<ImageRow>().apply {
+                addAll(images.filter { it.path.contains(text, ignoreCase = true) })
+            }
+        }
 
-        if (path != other.path) return false
-        if (type != other.type) return false
-        if (description != other.description) return false
-        if (!data.contentEquals(other.data)) return false
+        gallery.addListSelectionListener { event ->
+            if (!event.valueIsAdjusting) {
+                showPreview(gallery.selectedValue)
+            }
+        }
 
-        return true
+        add(search, "growx, wrap")
+        add(
+            JSplitPane(
+                JSplitPane.HORIZONTAL_SPLIT,
+                FlatScrollPane(gallery),
+                JPanel(MigLayout("ins 6, fill")).apply {
+                    add(previewDetails, "growx, wrap")
+                    add(FlatScrollPane(preview), "push, grow")
+                },
+            ).apply {
+                resizeWeight = 0.7
+            },
+            "push, grow",
+        )
     }
 
-    override fun hashCode(): Int {
-        var result = path.hashCode()
-        result = 31 * result + type.hashCode()
-        result = 31 * result + (description?.hashCode() ?: 0)
-        result = 31 * result + data.contentHashCode()
-        return result
+    private fun requestThumbnail(row: ImageRow) {
+        if (row.rowId in failed || !pending.add(row.rowId)) return
+        val requestedAt = fullPaints
+        decoding.launch {
+            try {
+                if (fullPaints > requestedAt && row.rowId !in paintedRows) return@launch
+                val image = readImage(row.rowId, THUMBNAIL_SIZE)
+                if (image != null) {
+                    thumbnails[row.rowId] = ImageIcon(image)
+                } else {
+                    failed += row.rowId
+                }
+            } catch (e: Exception) {
+                failed += row.rowId
+            } finally {
+                pending -= row.rowId
+            }
+            EDT_SCOPE.launch {
+                gallery.repaint()
+            }
+        }
     }
 
-    override fun toString(): String {
-        return "ImageRow(path='$path', type=$type, description=$description)"
+    private fun showPreview(row: ImageRow?) {
+        previewJob?.cancel()
+        preview.icon = null
+        preview.text = null
+        previewDetails.text = row?.let {
+            "${it.path} - ${it.type} - ${it.size.toFileSizeLabel()}${it.description?.let { description -> " - $description" }.orEmpty()}"
+        }
+        if (row == null) return
+
+        previewJob = decoding.launch {
+            val image = runCatching { readImage(row.rowId, PREVIEW_SIZE) }.getOrNull()
+            EDT_SCOPE.launch {
+                if (gallery.selectedValue == row) {
+                    if (image != null) {
+                        preview.icon = ImageIcon(image)
+                    } else {
+                        preview.text = "Unable to display ${row.type} image"
+                    }
+                }
+            }
+        }
     }
-}
 
-private data class ImageFolderNode(override val userObject: String) : TypedTreeNode<String>()
+    private fun readImage(rowId: Long, size: Int): BufferedImage? {
+        val data: ByteArray = connections.withReader { connection ->
+            connection.prepareStatement("SELECT data FROM images WHERE rowid = ?").use { statement ->
+                statement.setLong(1, rowId)
+                statement.executeQuery().use { rs ->
+                    if (rs.next()) rs.getBytes(1) else null
+                }
+            }
+        } ?: return null
+        return decode(data, size)
+    }
 
-class RootImageNode(connection: Connection) : AbstractTreeNode() {
-    private val listAll = connection.prepareStatement(
-        """
-            SELECT path, type, description, data
-            FROM images
-            WHERE type IS NOT NULL
-            ORDER BY path
-        """.trimIndent(),
-    )
+    override fun removeNotify() {
+        super.removeNotify()
+        decoding.coroutineContext[Job]?.cancelChildren()
+        pending.clear()
+    }
 
-    init {
-        val images = listAll.use {
-            it.executeQuery().toList { rs ->
-                ImageRow(
-                    rs.getString("path"),
-                    rs.getString("type").let(ImageFormat::valueOf),
-                    rs.getString("description"),
-                    rs.getBytes("data"),
-                )
+    companion object {
+        /**
+         * Reads the image metadata on the calling thread; the returned function builds the panel on the EDT.
+         */
+        fun prepare(connections: IdbConnectionManager): () -> ImagesPanel {
+            val images = connections.withReader { connection ->
+                connection.prepareStatement(
+                    // length() of a BLOB is read from the record header, so this never touches the image data itself
+                    //language=sql
+                    """
+                    SELECT rowid AS row_id, path, type, description, length(data) AS size
+                    FROM images
+                    WHERE type IS NOT NULL
+                    ORDER BY path
+                    """.trimIndent(),
+                ).executeQuery().toList { rs ->
+                    ImageRow(
+                        rowId = rs.getLong("row_id"),
+                        path = rs.getString("path"),
+                        type = rs.getString("type").let(ImageFormat::valueOf),
+                        description = rs.getString("description"),
+                        size = rs.getLong("size"),
+                    )
+                }
             }
+            return { ImagesPanel(connections, images) }
         }
 
-        val seen = mutableMapOf<List<String>, AbstractTreeNode>()
-        for (row in images) {
-            var lastSeen: AbstractTreeNode = this
-            val currentLeadingPath = mutableListOf<String>()
-            for (pathPart in row.path.split('/')) {
-                currentLeadingPath.add(pathPart)
-                val next = seen.getOrPut(currentLeadingPath.toList()) {
-                    val newChild = if (pathPart.contains('.')) {
-                        ImageNode(row)
-                    } else {
-                        ImageFolderNode(currentLeadingPath.joinToString("/"))
-                    }
-                    lastSeen.children.add(newChild)
-                    newChild
+        private const val THUMBNAIL_SIZE = 128
+        private const val PREVIEW_SIZE = 1024
+        private const val MAX_CACHE_BYTES = 64L * 1024 * 1024
+
+        private val DECODER = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors().coerceIn(1, 4),
+        ) { runnable ->
+            Thread(runnable, "idb-image-decoder").apply { isDaemon = true }
+        }.asCoroutineDispatcher()
+
+        /**
+         * Decodes [data] so that neither dimension exceeds [size]. Subsampling while reading means large source
+         * images are never fully decoded into memory.
+         */
+        private fun decode(data: ByteArray, size: Int): BufferedImage? {
+            val input = ImageIO.createImageInputStream(data.inputStream()) ?: return null
+            return input.use { iis ->
+                val reader = ImageIO.getImageReaders(iis).asSequence().firstOrNull() ?: return null
+                try {
+                    reader.input = iis
+                    val step = max(reader.getWidth(0), reader.getHeight(0)) / size
+                    val image = reader.read(
+                        0,
+                        reader.defaultReadParam.apply {
+                            if (step > 1) {
+                                setSourceSubsampling(step, step, 0, 0)
+                            }
+                        },
+                    )
+                    image.scaledToFit(size)
+                } finally {
+                    reader.dispose()
                 }
-                lastSeen = next
             }
         }
+
+        private fun BufferedImage.scaledToFit(size: Int): BufferedImage {
+            val scale = size.toDouble() / max(width, height)
+            if (scale >= 1.0) return this
+            val scaledWidth = (width * scale).roundToInt().coerceAtLeast(1)
+            val scaledHeight = (height * scale).roundToInt().coerceAtLeast(1)
+            return BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_ARGB).also { scaled ->
+                val g = scaled.createGraphics()
+                try {
+                    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR)
+                    g.drawImage(this as Image, 0, 0, scaledWidth, scaledHeight, null)
+                } finally {
+                    g.dispose()
+                }
+            }
+        }
+    }
+}
+
+private data class ImageRow(
+    val rowId: Long,
+    val path: String,
+    val type: ImageFormat,
+    val description: String?,
+    val size: Long,
+)
+
+/**
+ * An access-ordered LRU of decoded thumbnails, bounded by the approximate size of their pixel data.
+ */
+private class ThumbnailCache(private val maxBytes: Long) {
+    private val icons = LinkedHashMap<Long, ImageIcon>(16, 0.75F, true)
+    private var bytes = 0L
+
+    @Synchronized
+    operator fun get(rowId: Long): ImageIcon? = icons[rowId]
+
+    @Synchronized
+    operator fun set(rowId: Long, icon: ImageIcon) {
+        icons.put(rowId, icon)?.let { bytes -= it.byteSize }
+        bytes += icon.byteSize
+
+        val eldest = icons.values.iterator()
+        while (bytes > maxBytes && eldest.hasNext()) {
+            val evicted = eldest.next()
+            if (evicted === icon) break
+            bytes -= evicted.byteSize
+            eldest.remove()
+        }
     }
+
+    private val ImageIcon.byteSize: Long
+        get() = iconWidth.toLong() * iconHeight * 4
 }
@@ -0,0 +1,105 @@
+package io.github.paulgriffith.kindling.idb
+
+import io.github.paulgriffith.kindling.core.ToolPanel
+import io.github.paulgriffith.kindling.idb.metrics.MetricsView
+import io.github.paulgriffith.kindling.log.LogPanel
+import io.github.paulgriffith.kindling.utils.TabStrip
+import io.github.paulgriffith.kindling.utils.toList
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.cancel
+import java.nio.file.Path
+import kotlin.io.path.name
+
+/**
+ * Several idbs opened together, e.g. both halves of a redundant pair. System logs from every file are merged into a
+ * single timeline and system metrics are overlaid on shared charts; each file is also available on its own.
+ */
+class MultiIdbView(paths: List<Path>) : ToolPanel() {
+    private val sources: Map<String, IdbConnectionManager> = paths.sourceNames().zip(paths)
+        .associate { (source, path) -> source to IdbConnectionManager(path) }
+
+    private val tabs = TabStrip().apply {
+        trailingComponent = null
+        isTabsClosable = false
+    }
+
+    /**
+     * Merging every source is slow, so the combined tabs are built in the background as soon as the files are opened.
+     */
+    private val background = CoroutineScope(Dispatchers.IO + SupervisorJob())
+
+    init {
+        name = paths.joinToString { it.name }
+        toolTipText = paths.joinToString("\n")
+
+        val tables = sources.mapValues { (_, connections) ->
+            connections.withReader { connection ->
+                connection.metaData.getTables("", "", "", null).toList { rs ->
+                    rs.getString(3)
+                }
+            }
+        }
+
+        val logSources = sources.filterKeys { source -> IdbTool.Logs.supports(tables.getValue(source)) }
+        if (logSources.isNotEmpty()) {
+            tabs.addDeferredTab(
+                tabName = "Logs",
+                tabTooltip = logSources.keys.joinToString(),
+                content = background.async {
+                    val events = mergeSystemLogs(logSources)
+                    return@async { LogPanel(events) }
+                },
+            )
+        }
+
+        val metricSources = sources.filterKeys { source -> IdbTool.Metrics.supports(tables.getValue(source)) }
+        if (metricSources.size > 1) {
+            tabs.addDeferredTab(
+                tabName = "Metrics",
+                tabTooltip = metricSources.keys.joinToString(),
+                content = background.async {
+                    val data = MetricsView.load(metricSources)
+                    return@async { MetricsView(data) }
+                },
+            )
+        }
+
+        for (path in paths) {
+            tabs.addLazyTab(
+                tabName = path.name,
+                tabTooltip = path.toString(),
+            ) {
+                IdbView(path)
+            }
+        }
+
+        add(tabs, "push, grow")
+    }
+
+    override val icon = IdbViewer.icon
+
+    override fun removeNotify() {
+        super.removeNotify()
+        background.cancel()
+        sources.values.forEach(IdbConnectionManager::close)
+    }
+
+    companion object {
+        /**
+         * Redundant pairs often export identically named files; fall back to the parent directory to tell them apart.
+         */
+        private fun List<Path>.sourceNames(): List<String> {
+            val names = map { it.name }
+            return mapIndexed { i, path ->
+                if (names.count { it == names[i] } > 1 && path.parent != null) {
+                    "${path.parent.name}/${path.name}"
+                } else {
+                    path.name
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.paulgriffith.kindling.idb
+
+import io.github.paulgriffith.kindling.log.Level
+import io.github.paulgriffith.kindling.log.SystemLogsEvent
+import io.github.paulgriffith.kindling.utils.toList
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.ReceiveChannel
+import kotlinx.coroutines.channels.trySendBlocking
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import java.sql.Connection
+import java.time.Instant
+import java.util.PriorityQueue
+
+/**
+ * Reads every system log event out of this connection, in timestamp order, passing each to [action] as it's read.
+ * Stacktraces and MDC keys are read up front, so only the events themselves are streamed.
+ */
+@Suppress("SqlResolve")
+fun Connection.forEachSystemLogsEvent(source: String? = null, action: (SystemLogsEvent) -> Unit) {
+    val stackTraces: Map<Int, List<String>> = prepareStatement(
+        //language=sql
+        """
+        SELECT
+            event_id,
+            i,
+            trace_line
+        FROM
+            logging_event_exception
+        ORDER BY
+            event_id,
+            i
+        """.trimIndent(),
+    ).executeQuery()
+        .toList { resultSet ->
+            Pair(
+                resultSet.getInt("event_id"),
+                resultSet.getString("trace_line"),
+            )
+        }.groupBy(keySelector = { it.first }, valueTransform = { it.second })
+
+    val mdcKeys: Map<Int, Map<String, String>> = prepareStatement(
+        //language=sql
+        """
+        SELECT
+            event_id,
+            mapped_key,
+            mapped_value
+        FROM
+            logging_event_property
+        ORDER BY
+            event_id
+        """.trimIndent(),
+    ).executeQuery()
+        .toList { resultSet ->
+            Triple(
+                resultSet.getInt("event_id"),
+                resultSet.getString("mapped_key"),
+                resultSet.getString("mapped_value"),
+            )
+        }.groupingBy { it.first }
+        .aggregateTo(mutableMapOf<Int, MutableMap<String, String>>()) { _, accumulator, element, _ ->
+            val acc = accumulator ?: mutableMapOf()
+            acc[element.second] = element.third ?: "null"
+            acc
+        }
+
+    prepareStatement(
+        //language=sql
+        """
+        SELECT
+               event_id,
+               timestmp,
+               formatted_message,
+               logger_name,
+               level_string,
+               thread_name
+        FROM
+            logging_event
+        ORDER BY
+            timestmp,
+            event_id
+        """.trimIndent(),
+    ).executeQuery().use { resultSet ->
+        while (resultSet.next()) {
+            val eventId = resultSet.getInt("event_id")
+            action(
+                SystemLogsEvent(
+                    timestamp = Instant.ofEpochMilli(resultSet.getLong("timestmp")),
+                    message = resultSet.getString("formatted_message"),
+                    logger = resultSet.getString("logger_name"),
+                    thread = resultSet.getString("thread_name"),
+                    level = Level.valueOf(resultSet.getString("level_string")),
+                    mdc = mdcKeys[eventId].orEmpty(),
+                    stacktrace = stackTraces[eventId].orEmpty(),
+                    source = source,
+                ),
+            )
+        }
+    }
+}
+
+/**
+ * Reads the system logs out of each source in parallel and merges them into a single list, in timestamp order.
+ * Each source is streamed through a bounded channel, so no single database is ever fully materialized on its own.
+ */
+suspend fun mergeSystemLogs(sources: Map<String, IdbConnectionManager>): List<SystemLogsEvent> = coroutineScope {
+    val channels = sources.map { (source, connections) ->
+        Channel<SystemLogsEvent>(capacity = MERGE_BUFFER_SIZE).also { channel ->
+            launch(Dispatchers.IO) {
+                try {
+                    connections.withReader { connection ->
+                        connection.forEachSystemLogsEvent(source) { event ->
+                            channel.trySendBlocking(event).getOrThrow()
+                        }
+                    }
+                    channel.close()
+                } catch (e: Exception) {
+                    channel.close(e)
+                }
+            }
+        }
+    }
+
+    try {
+        val heads = PriorityQueue<Pair<SystemLogsEvent, ReceiveChannel<SystemLogsEvent>>>(
+            channels.size.coerceAtLeast(1),
+            compareBy { (event, _) -> event.timestamp },
+        )
+        for (channel in channels) {
+            channel.receiveOrThrow()?.let { event -> heads.add(event to channel) }
+        }
+
+        buildList {
+            while (heads.isNotEmpty()) {
+                val (event, channel) = heads.poll()
+                add(event)
+                channel.receiveOrThrow()?.let { next -> heads.add(next to channel) }
+            }
+        }
+    } finally {
+        // unblocks any producer still waiting on a full channel if we bailed out early
+        channels.forEach { it.cancel() }
+    }
+}
+
+private suspend fun <T> ReceiveChannel<T>.receiveOrThrow(): T? {
+    val result = receiveCatching()
+    result.exceptionOrNull()?.let { throw it }
+    return result.getOrNull()
+}
+
+private const val MERGE_BUFFER_SIZE = 1024
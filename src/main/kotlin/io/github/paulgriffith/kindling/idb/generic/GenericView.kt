@@ -1,15 +1,24 @@
 package io.github.paulgriffith.kindling.idb.generic
 
 import io.github.paulgriffith.kindling.core.ToolPanel
+import io.github.paulgriffith.kindling.idb.IdbConnectionManager
 import io.github.paulgriffith.kindling.utils.Action
+import io.github.paulgriffith.kindling.utils.EDT_SCOPE
 import io.github.paulgriffith.kindling.utils.FlatScrollPane
 import io.github.paulgriffith.kindling.utils.attachPopupMenu
+import io.github.paulgriffith.kindling.utils.jFrame
 import io.github.paulgriffith.kindling.utils.javaType
 import io.github.paulgriffith.kindling.utils.toList
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
 import net.miginfocom.swing.MigLayout
 import java.awt.Dimension
 import java.awt.Toolkit
 import java.awt.event.KeyEvent
+import java.io.File
 import java.sql.Connection
 import java.sql.JDBCType
 import java.sql.Timestamp
@@ -17,16 +26,21 @@ import java.util.Collections
 import java.util.Enumeration
 import javax.swing.Icon
 import javax.swing.JButton
+import javax.swing.JFileChooser
 import javax.swing.JMenuItem
 import javax.swing.JPanel
 import javax.swing.JPopupMenu
+import javax.swing.JProgressBar
 import javax.swing.JSplitPane
 import javax.swing.JTextArea
 import javax.swing.KeyStroke
+import javax.swing.filechooser.FileNameExtensionFilter
 import javax.swing.tree.DefaultTreeModel
 import javax.swing.tree.TreeNode
 
-class GenericView(connection: Connection) : ToolPanel("ins 0, fill, hidemode 3") {
+class GenericView(private val connections: IdbConnectionManager) : ToolPanel("ins 0, fill, hidemode 3") {
+    private val connection: Connection = connections.borrow()
+
     private val tables: List<Table> = connection
         .prepareStatement("SELECT name FROM main.sqlite_schema WHERE type = \"table\" ORDER BY name")
         .executeQuery()
@@ -110,8 +124,110 @@ class GenericView(connection: Connection) : ToolPanel("ins 0, fill, hidemode 3")
         }
     }
 
+    private val profileQuery: Action = Action(
+        name = "Profile",
+        description = "Run the query to completion and show its plan, timing and suggested indexes",
+    ) {
+        val sql = query.text
+        if (sql.isNullOrEmpty()) {
+            results.result = QueryResult.Error("Enter a query in the text field above")
+            return@Action
+        }
+        profileQuery.isEnabled = false
+        BACKGROUND.launch {
+            val profile = runCatching { QueryProfile.profile(connection, sql, tables) }
+            EDT_SCOPE.launch {
+                profileQuery.isEnabled = true
+                profile.fold(
+                    onSuccess = { result ->
+                        jFrame("Query Profile", 800, 600) {
+                            add(QueryProfilePanel(result))
+                        }
+                    },
+                    onFailure = { error ->
+                        results.result = QueryResult.Error(error.message ?: "Error")
+                    },
+                )
+            }
+        }
+    }
+
+    private var exportJob: Job? = null
+
+    private val exportProgress = JProgressBar().apply {
+        isIndeterminate = true
+        isStringPainted = true
+    }
+
+    private val cancelExport = Action(name = "Cancel") {
+        exportJob?.cancel()
+    }
+
+    private val exportStatus = JPanel(MigLayout("ins 0, fill")).apply {
+        isVisible = false
+        add(exportProgress, "pushx, growx")
+        add(JButton(cancelExport))
+    }
+
+    private val export: Action = Action(
+        name = "Export",
+        description = "Run the query and write every row straight to a file, without loading the results",
+    ) {
+        val sql = query.text
+        if (sql.isNullOrEmpty()) {
+            results.result = QueryResult.Error("Enter a query in the text field above")
+            return@Action
+        }
+        val chooser = JFileChooser().apply {
+            fileSelectionMode = JFileChooser.FILES_ONLY
+            isAcceptAllFileFilterUsed = false
+            for (format in ExportFormat.values()) {
+                addChoosableFileFilter(FileNameExtensionFilter(format.description, format.extension))
+            }
+            fileFilter = choosableFileFilters.first()
+            selectedFile = File("query results.${ExportFormat.CSV.extension}")
+        }
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return@Action
+
+        val format = ExportFormat.values().first { format ->
+            (chooser.fileFilter as FileNameExtensionFilter).extensions.contains(format.extension)
+        }
+        val file = chooser.selectedFile.let { selected ->
+            if (selected.extension.isEmpty()) File(selected.parentFile, "${selected.name}.${format.extension}") else selected
+        }
+
+        export.isEnabled = false
+        exportProgress.string = "Starting export to ${file.name}"
+        exportStatus.isVisible = true
+        val started = System.nanoTime()
+        exportJob = BACKGROUND.launch {
+            val exported = runCatching {
+                exportQuery(connection, sql, format, file) { rows ->
+                    val seconds = (System.nanoTime() - started) / 1_000_000_000.0
+                    val rate = if (seconds > 0) (rows / seconds).toLong() else rows
+                    EDT_SCOPE.launch {
+                        exportProgress.string = "$rows rows ($rate rows/s)"
+                    }
+                }
+            }
+            EDT_SCOPE.launch {
+                export.isEnabled = true
+                exportStatus.isVisible = false
+                exported.onFailure { error ->
+                    if (error !is CancellationException) {
+                        results.result = QueryResult.Error(error.message ?: "Error")
+                    }
+                    file.delete()
+                }
+            }
+        }
+    }
+
     private val queryPanel = JPanel(MigLayout("ins 0, fill")).apply {
-        add(JButton(execute), "wrap")
+        add(JButton(execute), "split 3")
+        add(JButton(profileQuery))
+        add(JButton(export), "wrap")
+        add(exportStatus, "growx, wrap")
         add(query, "push, grow")
     }
 
@@ -130,6 +246,11 @@ class GenericView(connection: Connection) : ToolPanel("ins 0, fill, hidemode 3")
                         JMenuItem(
                             Action("SELECT * FROM ${node.name}") {
                                 query.text = "SELECT * FROM ${node.name};"
+                                results.result = try {
+                                    TableBrowser(connection, node, connections)
+                                } catch (e: Exception) {
+                                    QueryResult.Error(e.message ?: "Error")
+                                }
                             },
                         ),
                     )
@@ -173,6 +294,8 @@ class GenericView(connection: Connection) : ToolPanel("ins 0, fill, hidemode 3")
     override val icon: Icon? = null
 
     companion object {
+        private val BACKGROUND = CoroutineScope(Dispatchers.Default)
+
         private val TIMESTAMP_COLUMN_NAMES = setOf("timestamp", "timestmp", "t_stamp", "tstamp")
     }
 }
@@ -0,0 +1,135 @@
+package io.github.paulgriffith.kindling.idb.generic
+
+import com.inductiveautomation.ignition.common.util.csv.CSVWriter
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import kotlinx.serialization.json.JsonNull
+import kotlinx.serialization.json.JsonPrimitive
+import kotlinx.serialization.json.buildJsonObject
+import java.io.File
+import java.io.Writer
+import java.sql.Connection
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.util.Base64
+import java.util.concurrent.atomic.AtomicBoolean
+
+enum class ExportFormat(val description: String, val extension: String) {
+    CSV("CSV File", "csv") {
+        override fun writer(output: Writer, columnNames: List<String>): RowWriter {
+            val csv = CSVWriter(output)
+            csv.writeNext(columnNames.toTypedArray())
+            val line = arrayOfNulls<String>(columnNames.size)
+            return object : RowWriter {
+                override fun write(resultSet: ResultSet) {
+                    for (i in line.indices) {
+                        line[i] = when (val value = resultSet.getObject(i + 1)) {
+                            is ByteArray -> BASE64.encodeToString(value)
+                            else -> value?.toString()
+                        }
+                    }
+                    csv.writeNext(line)
+                }
+
+                override fun close() = csv.close()
+            }
+        }
+    },
+    JSON_LINES("JSON Lines File", "jsonl") {
+        override fun writer(output: Writer, columnNames: List<String>): RowWriter {
+            return object : RowWriter {
+                override fun write(resultSet: ResultSet) {
+                    val row = buildJsonObject {
+                        columnNames.forEachIndexed { i, name ->
+                            val element = when (val value = resultSet.getObject(i + 1)) {
+                                null -> JsonNull
+                                is Number -> JsonPrimitive(value)
+                                is Boolean -> JsonPrimitive(value)
+                                is ByteArray -> JsonPrimitive(BASE64.encodeToString(value))
+                                else -> JsonPrimitive(value.toString())
+                            }
+                            put(name, element)
+                        }
+                    }
+                    output.write(row.toString())
+                    output.write("\n")
+                }
+
+                override fun close() = output.close()
+            }
+        }
+    };
+
+    interface RowWriter : AutoCloseable {
+        fun write(resultSet: ResultSet)
+    }
+
+    abstract fun writer(output: Writer, columnNames: List<String>): RowWriter
+
+    companion object {
+        private val BASE64: Base64.Encoder = Base64.getEncoder()
+    }
+}
+
+/**
+ * Streams the results of [sql] straight into [file], one row at a time, without holding more than a single row in
+ * memory. [onProgress] is called periodically with the number of rows written so far.
+ *
+ * Cancelling the calling coroutine also cancels the statement, so even a query that hasn't returned its first row yet
+ * stops promptly.
+ */
+suspend fun exportQuery(
+    connection: Connection,
+    sql: String,
+    format: ExportFormat,
+    file: File,
+    onProgress: (rows: Long) -> Unit,
+): Long {
+    return connection.prepareStatement(sql).use { statement ->
+        statement.fetchSize = EXPORT_FETCH_SIZE
+        coroutineScope {
+            val finished = AtomicBoolean(false)
+            // executeQuery blocks without ever suspending, so cancellation has to reach the statement from alongside it
+            val watcher = launch(start = CoroutineStart.UNDISPATCHED) {
+                try {
+                    awaitCancellation()
+                } finally {
+                    if (!finished.get()) {
+                        runCatching { statement.cancel() }
+                    }
+                }
+            }
+            try {
+                statement.executeQuery().use { resultSet ->
+                    val columnNames = List(resultSet.metaData.columnCount) { i -> resultSet.metaData.getColumnName(i + 1) }
+                    format.writer(file.bufferedWriter(), columnNames).use { writer ->
+                        var rows = 0L
+                        while (resultSet.next()) {
+                            writer.write(resultSet)
+                            rows++
+                            if (rows % PROGRESS_INTERVAL == 0L) {
+                                ensureActive()
+                                onProgress(rows)
+                            }
+                        }
+                        onProgress(rows)
+                        rows
+                    }
+                }
+            } catch (e: SQLException) {
+                // a cancelled statement fails with whatever error the driver uses; report the cancellation instead
+                ensureActive()
+                throw e
+            } finally {
+                finished.set(true)
+                watcher.cancel()
+            }
+        }
+    }
+}
+
+private const val EXPORT_FETCH_SIZE = 10_000
+private const val PROGRESS_INTERVAL = 10_000L
@@ -0,0 +1,186 @@
+package io.github.paulgriffith.kindling.idb.generic
+
+import io.github.paulgriffith.kindling.utils.AbstractTreeNode
+import io.github.paulgriffith.kindling.utils.toList
+import java.sql.Connection
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.nanoseconds
+
+class QueryPlanNode(
+    val id: Int,
+    val detail: String,
+) : AbstractTreeNode() {
+    override fun toString(): String = detail
+}
+
+class QueryProfile(
+    val plan: QueryPlanNode,
+    val wallTime: Duration,
+    val timeToFirstRow: Duration?,
+    val rowsReturned: Long,
+    val rowsScanned: Long?,
+    val suggestedIndexes: List<String>,
+) {
+    companion object {
+        private val SCAN_REGEX = """^SCAN (?:TABLE )?(?<table>\S+)(?<rest>.*)""".toRegex()
+        private val AUTOMATIC_INDEX_REGEX =
+            """^SEARCH (?:TABLE )?(?<table>\S+).*USING AUTOMATIC (?:PARTIAL )?COVERING INDEX \((?<columns>.*)\)""".toRegex()
+        private val CONSTRAINT_COLUMN_REGEX = """(\w+)\s*[=<>]""".toRegex()
+        private val CLAUSE_END = """\b(GROUP\s+BY|ORDER\s+BY|HAVING|LIMIT|WINDOW|UNION|EXCEPT|INTERSECT)\b|;|$"""
+
+        /**
+         * Runs [sql] to completion against [connection], discarding the results, and collects the query plan,
+         * timings and row counts. The SQLite JDBC driver doesn't expose `sqlite3_stmt_status`, so rows scanned is
+         * estimated from the size of each table the plan scans in full.
+         */
+        fun profile(connection: Connection, sql: String, tables: List<Table>): QueryProfile {
+            val plan = explain(connection, sql)
+            val steps = plan.flatten()
+
+            var rowsReturned = 0L
+            var timeToFirstRow: Duration? = null
+            val start = System.nanoTime()
+            connection.prepareStatement(sql).use { statement ->
+                statement.executeQuery().use { resultSet ->
+                    while (resultSet.next()) {
+                        if (rowsReturned == 0L) {
+                            timeToFirstRow = (System.nanoTime() - start).nanoseconds
+                        }
+                        rowsReturned++
+                    }
+                }
+            }
+            val wallTime = (System.nanoTime() - start).nanoseconds
+
+            val tablesByName = tables.associateBy { it.name.lowercase() }
+            val scannedTables = steps.mapNotNull { step ->
+                SCAN_REGEX.find(step.detail)?.let { match ->
+                    tablesByName[match.groups["table"]!!.value.lowercase()]?.let { table ->
+                        table to match.groups["rest"]!!.value
+                    }
+                }
+            }
+
+            val rowsScanned = scannedTables
+                .map { (table, _) -> table }
+                .distinct()
+                .mapNotNull { table -> estimateRowCount(connection, table) }
+                .takeIf { it.isNotEmpty() }
+                ?.sum()
+
+            return QueryProfile(
+                plan = plan,
+                wallTime = wallTime,
+                timeToFirstRow = timeToFirstRow,
+                rowsReturned = rowsReturned,
+                rowsScanned = rowsScanned,
+                suggestedIndexes = suggestIndexes(sql, steps, scannedTables, tablesByName),
+            )
+        }
+
+        private fun explain(connection: Connection, sql: String): QueryPlanNode {
+            val root = QueryPlanNode(0, "QUERY PLAN")
+            val nodes = mutableMapOf(0 to root)
+            connection.prepareStatement("EXPLAIN QUERY PLAN $sql").use { statement ->
+                statement.executeQuery().toList { resultSet ->
+                    Triple(resultSet.getInt("id"), resultSet.getInt("parent"), resultSet.getString("detail"))
+                }
+            }.forEach { (id, parent, detail) ->
+                val node = QueryPlanNode(id, detail)
+                nodes[id] = node
+                (nodes[parent] ?: root).children.add(node)
+            }
+            return root
+        }
+
+        private fun QueryPlanNode.flatten(): List<QueryPlanNode> {
+            return children.flatMap { child ->
+                child as QueryPlanNode
+                listOf(child) + child.flatten()
+            }
+        }
+
+        /**
+         * `max(rowid)` is a single b-tree seek, unlike `count(*)`, and is close enough to the true row count for the
+         * append-only tables we usually look at.
+         */
+        private fun estimateRowCount(connection: Connection, table: Table): Long? {
+            return try {
+                connection.prepareStatement("SELECT max(rowid) FROM \"${table.name}\"").use { statement ->
+                    statement.executeQuery().use { resultSet ->
+                        resultSet.next()
+                        resultSet.getLong(1)
+                    }
+                }
+            } catch (e: Exception) {
+                null
+            }
+        }
+
+        private fun suggestIndexes(
+            sql: String,
+            steps: List<QueryPlanNode>,
+            scannedTables: List<Pair<Table, String>>,
+            tablesByName: Map<String, Table>,
+        ): List<String> {
+            val suggestions = LinkedHashSet<String>()
+
+            // SQLite already decided an index was worth building on every execution
+            for (step in steps) {
+                val match = AUTOMATIC_INDEX_REGEX.find(step.detail) ?: continue
+                val table = tablesByName[match.groups["table"]!!.value.lowercase()] ?: continue
+                val columns = CONSTRAINT_COLUMN_REGEX.findAll(match.groups["columns"]!!.value)
+                    .map { it.groupValues[1] }
+                    .toList()
+                if (columns.isNotEmpty()) {
+                    suggestions += createIndex(table, columns)
+                }
+            }
+
+            val whereClause = clause(sql, "WHERE")
+            val orderByClause = clause(sql, "ORDER\\s+BY")
+            val usesTempOrderBy = steps.any { "TEMP B-TREE FOR ORDER BY" in it.detail }
+
+            for ((table, rest) in scannedTables) {
+                // "SCAN t USING INDEX i" already has an index to walk; only full table scans are interesting
+                if ("INDEX" in rest) continue
+
+                val filterColumns = table.columnsIn(whereClause)
+                if (filterColumns.isNotEmpty()) {
+                    suggestions += createIndex(table, filterColumns)
+                }
+                if (usesTempOrderBy) {
+                    val sortColumns = table.columnsIn(orderByClause)
+                    if (sortColumns.isNotEmpty()) {
+                        suggestions += createIndex(table, (filterColumns + sortColumns).distinct())
+                    }
+                }
+            }
+
+            return suggestions.toList()
+        }
+
+        private fun clause(sql: String, keyword: String): String {
+            return """\b$keyword\b(.*?)(?:$CLAUSE_END)"""
+                .toRegex(setOf(RegexOption.IGNORE_CASE, RegexOption.DOT_MATCHES_ALL))
+                .find(sql)
+                ?.groupValues
+                ?.get(1)
+                .orEmpty()
+        }
+
+        private fun Table.columnsIn(clause: String): List<String> {
+            if (clause.isBlank()) return emptyList()
+            return columns
+                .map { it.name }
+                .filter { column ->
+                    """\b${Regex.escape(column)}\b""".toRegex(RegexOption.IGNORE_CASE).containsMatchIn(clause)
+                }
+        }
+
+        private fun createIndex(table: Table, columns: List<String>): String {
+            val indexName = (listOf("idx", table.name) + columns).joinToString("_")
+            return "CREATE INDEX \"$indexName\" ON \"${table.name}\" (${columns.joinToString { "\"$it\"" }});"
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.paulgriffith.kindling.idb.generic
+
+import com.formdev.flatlaf.extras.components.FlatTree
+import io.github.paulgriffith.kindling.utils.FlatScrollPane
+import net.miginfocom.swing.MigLayout
+import java.text.NumberFormat
+import javax.swing.JLabel
+import javax.swing.JPanel
+import javax.swing.JTextArea
+import javax.swing.tree.DefaultTreeModel
+
+class QueryProfilePanel(profile: QueryProfile) : JPanel(MigLayout("ins 6, fill")) {
+    private val planTree = FlatTree().apply {
+        model = DefaultTreeModel(profile.plan)
+        isRootVisible = false
+        setShowsRootHandles(true)
+        var row = 0
+        while (row < rowCount) {
+            expandRow(row++)
+        }
+    }
+
+    private val suggestions = JTextArea().apply {
+        isEditable = false
+        text = if (profile.suggestedIndexes.isEmpty()) {
+            "No index suggestions - the plan doesn't scan any tables in full."
+        } else {
+            buildString {
+                appendLine("-- The idb is opened read-only; try these against a copy of the file.")
+                profile.suggestedIndexes.forEach(::appendLine)
+            }
+        }
+    }
+
+    init {
+        add(JLabel("Wall time: ${profile.wallTime}"), "split 4, gapright 20")
+        add(JLabel("First row: ${profile.timeToFirstRow ?: "-"}"), "gapright 20")
+        add(JLabel("Rows returned: ${NUMBER_FORMAT.format(profile.rowsReturned)}"), "gapright 20")
+        add(
+            JLabel("Rows scanned: ${profile.rowsScanned?.let { "≈${NUMBER_FORMAT.format(it)}" } ?: "-"}").apply {
+                toolTipText = "Estimated from the size of each table scanned in full"
+            },
+            "wrap",
+        )
+        add(FlatScrollPane(planTree), "push, grow, wrap")
+        add(FlatScrollPane(suggestions), "growx, h 100!")
+    }
+
+    companion object {
+        private val NUMBER_FORMAT = NumberFormat.getIntegerInstance()
+    }
+}
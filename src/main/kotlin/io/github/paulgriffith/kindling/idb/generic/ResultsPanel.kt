@@ -9,27 +9,45 @@ import io.github.paulgriffith.kindling.utils.ReifiedLabelProvider.Companion.setD
 import io.github.paulgriffith.kindling.utils.selectedOrAllRowIndices
 import io.github.paulgriffith.kindling.utils.toFileSizeLabel
 import net.miginfocom.swing.MigLayout
+import org.jdesktop.swingx.JXTable
 import java.awt.Toolkit
 import java.awt.datatransfer.StringSelection
+import java.awt.event.MouseAdapter
+import java.awt.event.MouseEvent
 import java.io.File
 import java.util.Base64
 import javax.swing.JButton
 import javax.swing.JFileChooser
 import javax.swing.JLabel
 import javax.swing.JPanel
+import javax.swing.SwingUtilities
 import javax.swing.filechooser.FileNameExtensionFilter
 
 class ResultsPanel : JPanel(MigLayout("ins 0, fill, hidemode 3")) {
     private val table = ReifiedJXTable(QueryResult.Success()).apply {
-        setDefaultRenderer<ByteArray>(
-            getText = {
-                if (it != null) {
-                    "${it.size.toLong().toFileSizeLabel()} BLOB"
-                } else {
-                    ""
+        setBlobRenderer()
+    }
+
+    private val browserTable = JXTable().apply {
+        // sorting is done by the database, see TableBrowser.toggleSort
+        isSortable = false
+        isColumnControlVisible = true
+        setBlobRenderer()
+        tableHeader.addMouseListener(
+            object : MouseAdapter() {
+                override fun mouseClicked(e: MouseEvent) {
+                    val column = columnAtPoint(e.point)
+                    val browser = model as? TableBrowser
+                    if (browser != null && column >= 0 && SwingUtilities.isLeftMouseButton(e)) {
+                        browser.toggleSort(convertColumnIndexToModel(column))
+                        // the columns themselves are untouched, so only their headers need the new sort indicator
+                        for (tableColumn in getColumns(true)) {
+                            tableColumn.headerValue = browser.getColumnName(tableColumn.modelIndex)
+                        }
+                        tableHeader.repaint()
+                    }
                 }
             },
-            getTooltip = { "Export to CSV to view full data (b64 encoded)" },
         )
     }
 
@@ -39,21 +57,36 @@ class ResultsPanel : JPanel(MigLayout("ins 0, fill, hidemode 3")) {
         isVisible = false
     }
 
+    private val browserDisplay = FlatScrollPane(browserTable).apply {
+        isVisible = false
+    }
+
     var result: QueryResult? = null
         set(value) {
             when (value) {
                 is QueryResult.Success -> {
                     table.model = value
                     tableDisplay.isVisible = true
+                    browserDisplay.isVisible = false
                     errorDisplay.isVisible = false
                     copy.isEnabled = value.rowCount > 0
                     save.isEnabled = value.rowCount > 0
                 }
 
+                is TableBrowser -> {
+                    browserTable.model = value
+                    browserDisplay.isVisible = true
+                    tableDisplay.isVisible = false
+                    errorDisplay.isVisible = false
+                    copy.isEnabled = false
+                    save.isEnabled = false
+                }
+
                 is QueryResult.Error -> {
                     errorDisplay.text = value.details
                     errorDisplay.icon = ERROR_ICON
                     tableDisplay.isVisible = false
+                    browserDisplay.isVisible = false
                     errorDisplay.isVisible = true
                 }
 
@@ -118,6 +151,7 @@ class ResultsPanel : JPanel(MigLayout("ins 0, fill, hidemode 3")) {
     init {
         add(errorDisplay, "cell 0 0, push, grow")
         add(tableDisplay, "cell 0 0, push, grow")
+        add(browserDisplay, "cell 0 0, push, grow")
         add(JButton(copy), "cell 1 0, top, flowy")
         add(JButton(save), "cell 1 0")
     }
@@ -125,5 +159,18 @@ class ResultsPanel : JPanel(MigLayout("ins 0, fill, hidemode 3")) {
     companion object {
         private val BASE64: Base64.Encoder = Base64.getEncoder()
         private val ERROR_ICON = FlatSVGIcon("icons/bx-error.svg").derive(3.0F)
+
+        private fun JXTable.setBlobRenderer() {
+            setDefaultRenderer<ByteArray>(
+                getText = {
+                    if (it != null) {
+                        "${it.size.toLong().toFileSizeLabel()} BLOB"
+                    } else {
+                        ""
+                    }
+                },
+                getTooltip = { "Export to CSV to view full data (b64 encoded)" },
+            )
+        }
     }
 }
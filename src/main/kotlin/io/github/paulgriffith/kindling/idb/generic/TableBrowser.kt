@@ -0,0 +1,193 @@
+package io.github.paulgriffith.kindling.idb.generic
+
+import io.github.paulgriffith.kindling.idb.IdbConnectionManager
+import io.github.paulgriffith.kindling.utils.EDT_SCOPE
+import io.github.paulgriffith.kindling.utils.PagedTableModel
+import io.github.paulgriffith.kindling.utils.getLogger
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import java.sql.Connection
+import java.sql.PreparedStatement
+
+/**
+ * Browses every row of [table] without loading it into memory. The row count starts as an estimate from the rowid
+ * range and is replaced by an exact count once one is available. The count runs on its own reader from [countReaders],
+ * since SQLite serializes everything on a connection and a large table's count would otherwise hold up the first page.
+ * Sorting is done by SQLite, by re-issuing the page queries with a different `ORDER BY`.
+ */
+class TableBrowser(
+    private val connection: Connection,
+    val table: Table,
+    private val countReaders: IdbConnectionManager,
+) : PagedTableModel<TableBrowser.Row>(), QueryResult {
+    class Row(val rowId: Long, val values: Array<Any?>)
+
+    private val columns = table.columns.filterNot { it.hidden }
+    private val columnClasses = columns.map { column ->
+        // SQLite is dynamically typed, so only BLOB columns can be trusted to hold a single type
+        if ("BLOB" in column.type.uppercase()) ByteArray::class.java else Any::class.java
+    }
+    private val quotedTable = table.name.quoted
+
+    private val selectList = (listOf("rowid AS $ROW_ID") + columns.map { it.name.quoted }).joinToString()
+
+    private val minRowId: Long
+    private val maxRowId: Long
+
+    /**
+     * True once we know rowids have no gaps, so any page can be found with a rowid range instead of an OFFSET.
+     */
+    @Volatile
+    private var isDense = false
+
+    @Volatile
+    var sortColumn: Int = -1
+        private set
+
+    @Volatile
+    var isAscending: Boolean = true
+        private set
+
+    init {
+        connection.prepareStatement("SELECT min(rowid), max(rowid) FROM $quotedTable").executeQuery().use { rs ->
+            rs.next()
+            minRowId = rs.getLong(1)
+            maxRowId = rs.getLong(2)
+        }
+        val estimate = if (maxRowId >= minRowId) maxRowId - minRowId + 1 else 0
+        reset(estimate.coerceAtMost(Int.MAX_VALUE.toLong()).toInt())
+
+        BACKGROUND.launch {
+            val count = runCatching {
+                countReaders.withReader { reader ->
+                    reader.prepareStatement("SELECT count(*) FROM $quotedTable").use { statement ->
+                        statement.executeQuery().use { rs ->
+                            rs.next()
+                            rs.getLong(1)
+                        }
+                    }
+                }
+            }.getOrElse { ex ->
+                // most likely the view was closed mid-count; either way, the estimate will have to do
+                LOGGER.debug("Couldn't count rows in ${table.name}", ex)
+                return@launch
+            }
+            isDense = count == estimate
+            EDT_SCOPE.launch {
+                updateRowCount(count.coerceAtMost(Int.MAX_VALUE.toLong()).toInt())
+            }
+        }
+    }
+
+    /**
+     * Cycles [column] through ascending, descending and unsorted (rowid order).
+     */
+    fun toggleSort(column: Int) {
+        if (column == sortColumn) {
+            if (isAscending) {
+                isAscending = false
+            } else {
+                sortColumn = -1
+            }
+        } else {
+            sortColumn = column
+            isAscending = true
+        }
+        // only the rows change; a structure change would throw away the user's column widths, order and visibility
+        reset(rowCount)
+    }
+
+    override fun getColumnCount(): Int = columns.size
+
+    override fun getColumnName(column: Int): String {
+        val name = columns[column].name
+        return when {
+            column != sortColumn -> name
+            isAscending -> "$name ▲"
+            else -> "$name ▼"
+        }
+    }
+
+    override fun getColumnClass(columnIndex: Int): Class<*> = columnClasses[columnIndex]
+
+    override fun getValueAt(row: Row, column: Int): Any? = row.values[column]
+
+    override fun fetchPage(page: Int, previous: List<Row>?): List<Row> {
+        val sortColumn = sortColumn
+        val last = previous?.lastOrNull()
+
+        val statement = if (sortColumn < 0) {
+            when {
+                last != null -> connection.prepareStatement(
+                    "SELECT $selectList FROM $quotedTable WHERE rowid > ? ORDER BY rowid LIMIT $pageSize",
+                ).apply {
+                    setLong(1, last.rowId)
+                }
+
+                isDense -> connection.prepareStatement(
+                    "SELECT $selectList FROM $quotedTable WHERE rowid >= ? AND rowid < ? ORDER BY rowid",
+                ).apply {
+                    val start = minRowId + page.toLong() * pageSize
+                    setLong(1, start)
+                    setLong(2, start + pageSize)
+                }
+
+                else -> offsetQuery("rowid", page)
+            }
+        } else {
+            val sortKey = columns[sortColumn].name.quoted
+            val direction = if (isAscending) "ASC" else "DESC"
+            val lastKey = last?.values?.get(sortColumn)
+            if (last != null && lastKey != null) {
+                // SQLite sorts nulls first, so descending pages still have to pick up the nulls at the very end
+                val predicate = if (isAscending) {
+                    "($sortKey, rowid) > (?, ?)"
+                } else {
+                    "(($sortKey, rowid) < (?, ?) OR $sortKey IS NULL)"
+                }
+                connection.prepareStatement(
+                    "SELECT $selectList FROM $quotedTable WHERE $predicate ORDER BY $sortKey $direction, rowid $direction LIMIT $pageSize",
+                ).apply {
+                    setObject(1, lastKey)
+                    setLong(2, last.rowId)
+                }
+            } else {
+                offsetQuery("$sortKey $direction, rowid $direction", page)
+            }
+        }
+
+        return statement.use {
+            it.executeQuery().use { rs ->
+                buildList {
+                    while (rs.next()) {
+                        add(
+                            Row(
+                                rowId = rs.getLong(1),
+                                values = Array(columns.size) { i -> rs.getObject(i + 2) },
+                            ),
+                        )
+                    }
+                }
+            }
+        }
+    }
+
+    private fun offsetQuery(orderBy: String, page: Int): PreparedStatement {
+        return connection.prepareStatement(
+            "SELECT $selectList FROM $quotedTable ORDER BY $orderBy LIMIT $pageSize OFFSET ?",
+        ).apply {
+            setLong(1, page.toLong() * pageSize)
+        }
+    }
+
+    companion object {
+        private const val ROW_ID = "\"__rowid\""
+
+        private val BACKGROUND = CoroutineScope(Dispatchers.IO)
+        private val LOGGER = getLogger<TableBrowser>()
+
+        private val String.quoted: String
+            get() = "\"${replace("\"", "\"\"")}\""
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.paulgriffith.kindling.idb.historian
+
+import io.github.paulgriffith.kindling.idb.IdbConnectionManager
+import io.github.paulgriffith.kindling.utils.toList
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+
+/**
+ * A tag path from `sqlth_te`. A tag that has been retired and recreated has several ids, all of which are queried.
+ */
+data class HistorianTag(
+    val path: String,
+    val ids: List<Int>,
+)
+
+data class Partition(
+    val name: String,
+    val start: Long,
+    val end: Long,
+)
+
+/**
+ * Aggregate of every sample in `[start, start + width)`.
+ */
+class Bucket(
+    val start: Long,
+    val min: Double,
+    val max: Double,
+    val sum: Double,
+    val count: Long,
+) {
+    val average: Double
+        get() = sum / count
+
+    operator fun plus(other: Bucket): Bucket = Bucket(
+        start = start,
+        min = minOf(min, other.min),
+        max = maxOf(max, other.max),
+        sum = sum + other.sum,
+        count = count + other.count,
+    )
+}
+
+@Suppress("SqlResolve")
+class Historian(private val connections: IdbConnectionManager) {
+    val tags: List<HistorianTag> = connections.withReader { connection ->
+        connection.prepareStatement(
+            //language=sql
+            """
+            SELECT id, tagpath
+            FROM sqlth_te
+            ORDER BY tagpath
+            """.trimIndent(),
+        ).executeQuery().toList { rs ->
+            rs.getString("tagpath") to rs.getInt("id")
+        }
+    }.groupBy(keySelector = { it.first.lowercase() })
+        .map { (_, ids) -> HistorianTag(ids.first().first, ids.map { it.second }) }
+
+    val partitions: List<Partition> = connections.withReader { connection ->
+        val tables = connection.metaData.getTables("", "", "", null).toList { rs ->
+            rs.getString(3).lowercase()
+        }.toSet()
+
+        connection.prepareStatement(
+            //language=sql
+            """
+            SELECT pname, start_time, end_time
+            FROM sqlth_partitions
+            ORDER BY start_time
+            """.trimIndent(),
+        ).executeQuery().toList { rs ->
+            Partition(rs.getString("pname"), rs.getLong("start_time"), rs.getLong("end_time"))
+        }.filter { it.name.lowercase() in tables }
+    }
+
+    /**
+     * Aggregates [tag]'s numeric samples in `[start, end)` into [bucketCount] evenly sized buckets, querying every
+     * overlapping partition in parallel on its own connection. Empty buckets are omitted.
+     */
+    suspend fun aggregate(tag: HistorianTag, start: Long, end: Long, bucketCount: Int): List<Bucket> = coroutineScope {
+        val width = ((end - start) / bucketCount).coerceAtLeast(1)
+        val tagIds = tag.ids.joinToString()
+
+        partitions
+            .filter { partition -> partition.start < end && partition.end > start }
+            .map { partition ->
+                async(Dispatchers.IO) {
+                    connections.withReader { connection ->
+                        connection.prepareStatement(
+                            //language=sql
+                            """
+                            SELECT
+                                (t_stamp - ?) / ? AS bucket,
+                                min(value),
+                                max(value),
+                                total(value),
+                                count(value)
+                            FROM (
+                                SELECT t_stamp, coalesce(floatvalue, intvalue) AS value
+                                FROM "${partition.name}"
+                                WHERE tagid IN ($tagIds)
+                                  AND t_stamp >= ?
+                                  AND t_stamp < ?
+                            )
+                            WHERE value IS NOT NULL
+                            GROUP BY bucket
+                            """.trimIndent(),
+                        ).apply {
+                            setLong(1, start)
+                            setLong(2, width)
+                            setLong(3, start)
+                            setLong(4, end)
+                        }.executeQuery().toList { rs ->
+                            Bucket(
+                                start = start + rs.getLong(1) * width,
+                                min = rs.getDouble(2),
+                                max = rs.getDouble(3),
+                                sum = rs.getDouble(4),
+                                count = rs.getLong(5),
+                            )
+                        }
+                    }
+                }
+            }
+            .awaitAll()
+            .flatten()
+            .groupingBy { it.start }
+            .reduce { _, accumulator, bucket -> accumulator + bucket }
+            .values
+            .sortedBy { it.start }
+    }
+}
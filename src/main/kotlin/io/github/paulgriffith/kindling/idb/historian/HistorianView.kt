@@ -0,0 +1,163 @@
+package io.github.paulgriffith.kindling.idb.historian
+
+import io.github.paulgriffith.kindling.core.Kindling
+import io.github.paulgriffith.kindling.core.ToolPanel
+import io.github.paulgriffith.kindling.utils.EDT_SCOPE
+import io.github.paulgriffith.kindling.utils.FlatScrollPane
+import io.github.paulgriffith.kindling.utils.installSearchable
+import io.github.paulgriffith.kindling.utils.listCellRenderer
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.launch
+import net.miginfocom.swing.MigLayout
+import org.jfree.chart.ChartFactory
+import org.jfree.chart.ChartPanel
+import org.jfree.chart.JFreeChart
+import org.jfree.chart.renderer.xy.DeviationRenderer
+import org.jfree.chart.ui.RectangleInsets
+import org.jfree.data.xy.YIntervalSeries
+import org.jfree.data.xy.YIntervalSeriesCollection
+import java.awt.Color
+import java.text.SimpleDateFormat
+import java.util.Calendar
+import java.util.Date
+import javax.swing.Icon
+import javax.swing.JLabel
+import javax.swing.JList
+import javax.swing.JSpinner
+import javax.swing.ListSelectionModel
+import javax.swing.SpinnerDateModel
+import javax.swing.UIManager
+
+class HistorianView(private val historian: Historian) : ToolPanel("ins 0, fill, hidemode 3") {
+    private val tagList = JList(historian.tags.toTypedArray()).apply {
+        selectionMode = ListSelectionModel.SINGLE_SELECTION
+        cellRenderer = listCellRenderer<HistorianTag> { _, value, _, _, _ ->
+            text = value.path
+            toolTipText = "Tag ids: ${value.ids.joinToString()}"
+        }
+        installSearchable(
+            setup = {
+                isCaseSensitive = false
+                isRepeats = true
+            },
+            conversion = { (it as? HistorianTag)?.path.orEmpty() },
+        )
+    }
+
+    private val startTime = dateSpinner(historian.partitions.minOfOrNull { it.start } ?: 0)
+    private val endTime = dateSpinner(historian.partitions.maxOfOrNull { it.end } ?: System.currentTimeMillis())
+
+    private val status = JLabel()
+
+    private val dataset = YIntervalSeriesCollection()
+
+    private val chart: JFreeChart = ChartFactory.createTimeSeriesChart(
+        /* title = */ null,
+        /* timeAxisLabel = */ null,
+        /* valueAxisLabel = */ null,
+        /* dataset = */ dataset,
+        /* legend = */ false,
+        /* tooltips = */ true,
+        /* urls = */ false,
+    ).apply {
+        xyPlot.apply {
+            renderer = DeviationRenderer(true, false).apply {
+                setSeriesPaint(0, UIManager.getColor("Actions.Blue") ?: Color.BLUE)
+                setSeriesFillPaint(0, UIManager.getColor("Actions.Blue") ?: Color.BLUE)
+                setAlpha(0.25F)
+            }
+            renderer.setDefaultToolTipGenerator { data, series, item ->
+                val interval = data as YIntervalSeriesCollection
+                "${DATE_FORMAT.format(data.getXValue(series, item))} - avg ${data.getYValue(series, item)}, " +
+                    "min ${interval.getStartYValue(series, item)}, max ${interval.getEndYValue(series, item)}"
+            }
+            isDomainGridlinesVisible = false
+            isRangeGridlinesVisible = false
+            isOutlineVisible = false
+        }
+        padding = RectangleInsets(10.0, 10.0, 10.0, 10.0)
+        isBorderVisible = false
+
+        Kindling.theme.apply(this)
+        Kindling.addThemeChangeListener { theme ->
+            theme.apply(this)
+        }
+    }
+
+    private val chartPanel = ChartPanel(chart)
+
+    private var queryJob: Job? = null
+
+    init {
+        add(FlatScrollPane(tagList), "grow, w 250::25%, spany 2")
+        add(JLabel("From"), "split 5")
+        add(startTime)
+        add(JLabel("to"))
+        add(endTime)
+        add(status, "gapleft 20, wrap")
+        add(chartPanel, "push, grow")
+
+        tagList.addListSelectionListener { event ->
+            if (!event.valueIsAdjusting) {
+                updateData()
+            }
+        }
+        startTime.addChangeListener { updateData() }
+        endTime.addChangeListener { updateData() }
+    }
+
+    private fun updateData() {
+        val tag = tagList.selectedValue ?: return
+        val start = (startTime.value as Date).time
+        val end = (endTime.value as Date).time
+        if (end <= start) {
+            status.text = "End must be after start"
+            return
+        }
+        // one bucket per horizontal pixel; anything finer couldn't be drawn anyway
+        val bucketCount = chartPanel.width.coerceAtLeast(MIN_BUCKETS)
+
+        queryJob?.cancel()
+        status.text = "Loading ${tag.path}..."
+        queryJob = BACKGROUND.launch {
+            val result = runCatching { historian.aggregate(tag, start, end, bucketCount) }
+            ensureActive()
+            EDT_SCOPE.launch {
+                if (tagList.selectedValue != tag) return@launch
+                result.fold(
+                    onSuccess = { buckets ->
+                        dataset.removeAllSeries()
+                        dataset.addSeries(
+                            YIntervalSeries(tag.path, false, true).apply {
+                                for (bucket in buckets) {
+                                    add(bucket.start.toDouble(), bucket.average, bucket.min, bucket.max)
+                                }
+                            },
+                        )
+                        status.text = "${buckets.sumOf { it.count }} samples in ${buckets.size} buckets"
+                    },
+                    onFailure = { error ->
+                        status.text = "Error: ${error.message}"
+                    },
+                )
+            }
+        }
+    }
+
+    override val icon: Icon? = null
+
+    companion object {
+        private val BACKGROUND = CoroutineScope(Dispatchers.Default)
+
+        private const val MIN_BUCKETS = 100
+
+        private val DATE_FORMAT = SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+
+        private fun dateSpinner(initial: Long) = JSpinner(SpinnerDateModel(Date(initial), null, null, Calendar.MINUTE)).apply {
+            editor = JSpinner.DateEditor(this, "yyyy-MM-dd HH:mm:ss")
+        }
+    }
+}
@@ -1,8 +1,58 @@
 package io.github.paulgriffith.kindling.idb.metrics
 
 import java.util.Date
+import kotlin.math.abs
 
 @JvmInline
 value class Metric(val name: String)
 
 data class MetricData(val value: Double, val timestamp: Date)
+
+/**
+ * Reduces this series to at most [threshold] points with the Largest-Triangle-Three-Buckets algorithm, which keeps the
+ * peaks and troughs that a plain stride would skip over. The first and last points are always retained.
+ */
+fun List<MetricData>.downsample(threshold: Int): List<MetricData> {
+    if (threshold < 3 || size <= threshold) return this
+
+    val sampled = ArrayList<MetricData>(threshold)
+    sampled += first()
+
+    val bucketSize = (size - 2).toDouble() / (threshold - 2)
+    var selected = 0
+    for (bucket in 0 until threshold - 2) {
+        val start = (bucket * bucketSize).toInt() + 1
+        val end = ((bucket + 1) * bucketSize).toInt() + 1
+
+        // the average of the next bucket is the third corner of every candidate triangle
+        val nextStart = end
+        val nextEnd = (((bucket + 2) * bucketSize).toInt() + 1).coerceAtMost(size)
+        var averageX = 0.0
+        var averageY = 0.0
+        for (i in nextStart until nextEnd) {
+            averageX += this[i].timestamp.time
+            averageY += this[i].value
+        }
+        val nextCount = (nextEnd - nextStart).coerceAtLeast(1)
+        averageX /= nextCount
+        averageY /= nextCount
+
+        val anchorX = this[selected].timestamp.time.toDouble()
+        val anchorY = this[selected].value
+        var maxArea = -1.0
+        for (i in start until end) {
+            val area = abs(
+                (anchorX - averageX) * (this[i].value - anchorY) -
+                    (anchorX - this[i].timestamp.time) * (averageY - anchorY),
+            )
+            if (area > maxArea) {
+                maxArea = area
+                selected = i
+            }
+        }
+        sampled += this[selected]
+    }
+
+    sampled += last()
+    return sampled
+}
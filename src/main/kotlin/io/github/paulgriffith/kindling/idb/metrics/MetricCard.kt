@@ -12,6 +12,7 @@ import org.jdesktop.swingx.border.DropShadowBorder
 import org.jfree.chart.ChartPanel
 import org.jfree.chart.annotations.XYLineAnnotation
 import org.jfree.data.statistics.Regression
+import org.jfree.data.time.TimeSeriesCollection
 import org.jfree.data.xy.XYDataset
 import java.awt.BasicStroke
 import java.awt.Font
@@ -20,16 +21,23 @@ import java.text.FieldPosition
 import java.text.NumberFormat
 import java.text.ParsePosition
 import java.text.SimpleDateFormat
+import java.util.Date
 import javax.swing.JLabel
 import javax.swing.JPanel
 import javax.swing.SwingConstants.CENTER
 import javax.swing.UIManager
 
-class MetricCard(val metric: Metric, data: List<MetricData>) : JPanel(MigLayout("fill, ins 10")) {
+/**
+ * Summarizes a single metric. With more than one entry in [data] (one per source idb), each source is plotted as its
+ * own series on a shared time axis.
+ */
+class MetricCard(val metric: Metric, private val data: Map<String, List<MetricData>>) : JPanel(MigLayout("fill, ins 10")) {
     private val presentation = metric.presentation
 
+    private val sampled = data.mapValues { (_, series) -> series.downsample(MAX_POINTS) }
+
     private val sparkLine = ChartPanel(
-        /* chart = */ sparkline(data, presentation.formatter),
+        /* chart = */ sparkline(sampled, presentation.formatter),
         /* properties = */ false,
         /* save = */ false,
         /* print = */ false,
@@ -47,7 +55,7 @@ class MetricCard(val metric: Metric, data: List<MetricData>) : JPanel(MigLayout(
                     add(
                         ChartPanel(
                             sparkline(
-                                data,
+                                plotted(),
                                 presentation.formatter,
                             ),
                         ),
@@ -57,6 +65,22 @@ class MetricCard(val metric: Metric, data: List<MetricData>) : JPanel(MigLayout(
         )
     }
 
+    /**
+     * Shifts every series so they all start at the same instant as the earliest one, so that e.g. the first hour after
+     * a restart can be compared between gateways that were restarted at different times.
+     */
+    var isAligned: Boolean = false
+        set(value) {
+            if (field == value) return
+            field = value
+            (sparkLine.chart.xyPlot.dataset as TimeSeriesCollection).apply {
+                removeAllSeries()
+                for ((source, series) in plotted()) {
+                    addSeries(series.toTimeSeries(source))
+                }
+            }
+        }
+
     init {
         add(
             JLabel(metric.name, CENTER).apply {
@@ -65,15 +89,30 @@ class MetricCard(val metric: Metric, data: List<MetricData>) : JPanel(MigLayout(
             "span, pushx, growx",
         )
 
-        val aggregateData = DoubleArray(data.size) { i -> data[i].value }
-        add(JLabel("Min: ${presentation.formatter.format(aggregateData.min())}", CENTER), "pushx, growx")
-        add(JLabel("Avg: ${presentation.formatter.format(aggregateData.average())}", CENTER), "pushx, growx")
-        add(JLabel("Max: ${presentation.formatter.format(aggregateData.max())}", CENTER), "pushx, growx, wrap")
+        if (data.size == 1) {
+            val aggregateData = data.values.single().values()
+            add(JLabel("Min: ${presentation.formatter.format(aggregateData.min())}", CENTER), "pushx, growx")
+            add(JLabel("Avg: ${presentation.formatter.format(aggregateData.average())}", CENTER), "pushx, growx")
+            add(JLabel("Max: ${presentation.formatter.format(aggregateData.max())}", CENTER), "pushx, growx, wrap")
+        } else {
+            for ((source, series) in data) {
+                val aggregateData = series.values()
+                add(
+                    JLabel(
+                        "$source - Min: ${presentation.formatter.format(aggregateData.min())}, " +
+                            "Avg: ${presentation.formatter.format(aggregateData.average())}, " +
+                            "Max: ${presentation.formatter.format(aggregateData.max())}",
+                        CENTER,
+                    ),
+                    "span, pushx, growx",
+                )
+            }
+        }
 
-        val minTimestamp = data.first().timestamp
-        val maxTimestamp = data.last().timestamp
+        val minTimestamp = data.values.minOf { it.first().timestamp }
+        val maxTimestamp = data.values.maxOf { it.last().timestamp }
 
-        if (presentation.isShowTrend) {
+        if (presentation.isShowTrend && data.size == 1) {
             val regression = regressionFunction(sparkLine.chart.xyPlot.dataset, 0)
             val minTimeDouble = minTimestamp.time.toDouble()
             val maxTimeDouble = maxTimestamp.time.toDouble()
@@ -100,7 +139,21 @@ class MetricCard(val metric: Metric, data: List<MetricData>) : JPanel(MigLayout(
         }
     }
 
+    private fun plotted(): Map<String, List<MetricData>> {
+        if (!isAligned) return sampled
+        val start = sampled.values.minOf { it.first().timestamp.time }
+        return sampled.mapValues { (_, series) ->
+            val offset = start - series.first().timestamp.time
+            series.map { it.copy(timestamp = Date(it.timestamp.time + offset)) }
+        }
+    }
+
     companion object {
+        /**
+         * Roughly the width of a card's chart in pixels; more points than this can't be told apart anyway.
+         */
+        private const val MAX_POINTS = 1000
+
         val DATE_FORMAT = SimpleDateFormat("MM/dd/yy HH:mm:ss")
 
         private val mbFormatter = DecimalFormat("0.0 'mB'")
@@ -136,6 +189,8 @@ class MetricCard(val metric: Metric, data: List<MetricData>) : JPanel(MigLayout(
                 else -> Default
             }
 
+        private fun List<MetricData>.values() = DoubleArray(size) { i -> this[i].value }
+
         fun regressionFunction(dataset: XYDataset, series: Int): (Double) -> Double {
             val (a, b) = Regression.getOLSRegression(dataset, series)
             return { x ->
@@ -1,53 +1,40 @@
 package io.github.paulgriffith.kindling.idb.metrics
 
 import io.github.paulgriffith.kindling.core.ToolPanel
+import io.github.paulgriffith.kindling.idb.IdbConnectionManager
 import io.github.paulgriffith.kindling.utils.EDT_SCOPE
 import io.github.paulgriffith.kindling.utils.FlatScrollPane
 import io.github.paulgriffith.kindling.utils.toList
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.launch
 import net.miginfocom.swing.MigLayout
 import java.sql.Connection
 import javax.swing.Icon
+import javax.swing.JCheckBox
 import javax.swing.JPanel
 
-class MetricsView(connection: Connection) : ToolPanel("ins 0, fill, hidemode 3") {
-    private val metrics: List<Metric> = connection.prepareStatement(
-        //language=sql
-        """
-        SELECT DISTINCT
-            METRIC_NAME
-        FROM SYSTEM_METRICS
-        """,
-    ).executeQuery().toList { rs ->
-        Metric(rs.getString(1))
-    }
-
-    private val metricTree = MetricTree(metrics)
+/**
+ * Shows every system metric in [metricData]. Metrics recorded by more than one source are overlaid on a single card.
+ */
+class MetricsView(metricData: Map<Metric, Map<String, List<MetricData>>>) : ToolPanel("ins 0, fill, hidemode 3") {
+    private val metricTree = MetricTree(metricData.keys.toList())
 
-    private val metricDataQuery = connection.prepareStatement(
-        //language=sql
-        """
-        SELECT DISTINCT
-            VALUE,
-            TIMESTAMP 
-        FROM SYSTEM_METRICS
-        WHERE METRIC_NAME = ?
-        ORDER BY TIMESTAMP
-        """,
-    )
+    private val metricCards: List<MetricCard> = metricData.map { (metric, data) ->
+        MetricCard(metric, data)
+    }
 
-    private val metricCards: List<MetricCard> = metrics.map { metric ->
-        val metricData = metricDataQuery.apply {
-            setString(1, metric.name)
-        }
-            .executeQuery()
-            .toList { rs ->
-                MetricData(rs.getDouble(1), rs.getDate(2))
+    private val alignStarts = JCheckBox("Align start times").apply {
+        toolTipText = "Shift each file's metrics so they all start at the same time"
+        isVisible = metricData.values.any { it.size > 1 }
+        addActionListener {
+            for (card in metricCards) {
+                card.isAligned = isSelected
             }
-
-        MetricCard(metric, metricData)
+        }
     }
 
     private val cardPanel = JPanel(MigLayout("wrap 3, fillx, hidemode 3")).apply {
@@ -57,8 +44,9 @@ class MetricsView(connection: Connection) : ToolPanel("ins 0, fill, hidemode 3")
     }
 
     init {
-        add(FlatScrollPane(metricTree), "grow, w 200::20%")
-        add(FlatScrollPane(cardPanel), "push, grow, span")
+        add(FlatScrollPane(metricTree), "spany 2, grow, w 200::20%")
+        add(alignStarts, "wrap")
+        add(FlatScrollPane(cardPanel), "push, grow")
 
         metricTree.checkBoxTreeSelectionModel.addTreeSelectionListener { updateData() }
     }
@@ -78,5 +66,37 @@ class MetricsView(connection: Connection) : ToolPanel("ins 0, fill, hidemode 3")
 
     companion object {
         private val BACKGROUND = CoroutineScope(Dispatchers.Default)
+
+        /**
+         * Reads every metric out of each of [sources] in parallel, keyed by metric and then by source.
+         */
+        suspend fun load(sources: Map<String, IdbConnectionManager>): Map<Metric, Map<String, List<MetricData>>> = coroutineScope {
+            sources.map { (source, connections) ->
+                async(Dispatchers.IO) {
+                    source to connections.withReader(::loadMetrics)
+                }
+            }.awaitAll()
+        }.fold(LinkedHashMap<Metric, MutableMap<String, List<MetricData>>>()) { acc, (source, metrics) ->
+            for ((metric, data) in metrics) {
+                acc.getOrPut(metric) { LinkedHashMap() }[source] = data
+            }
+            acc
+        }
+
+        private fun loadMetrics(connection: Connection): Map<Metric, List<MetricData>> {
+            return connection.prepareStatement(
+                //language=sql
+                """
+                SELECT DISTINCT
+                    METRIC_NAME,
+                    VALUE,
+                    TIMESTAMP
+                FROM SYSTEM_METRICS
+                ORDER BY METRIC_NAME, TIMESTAMP
+                """,
+            ).executeQuery().toList { rs ->
+                Metric(rs.getString(1)) to MetricData(rs.getDouble(2), rs.getDate(3))
+            }.groupBy(keySelector = { it.first }, valueTransform = { it.second })
+        }
     }
 }
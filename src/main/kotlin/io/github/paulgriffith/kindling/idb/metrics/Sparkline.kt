@@ -11,20 +11,21 @@ import org.jfree.data.time.TimeSeries
 import org.jfree.data.time.TimeSeriesCollection
 import java.text.NumberFormat
 
-fun sparkline(data: List<MetricData>, formatter: NumberFormat): JFreeChart {
+/**
+ * Plots one line per entry in [series], on a shared time axis. A legend is only shown when there's more than one.
+ */
+fun sparkline(series: Map<String, List<MetricData>>, formatter: NumberFormat): JFreeChart {
     return ChartFactory.createTimeSeriesChart(
         /* title = */ null,
         /* timeAxisLabel = */ null,
         /* valueAxisLabel = */ null,
         /* dataset = */
-        TimeSeriesCollection(
-            TimeSeries("Series").apply {
-                for ((value, timestamp) in data) {
-                    add(FixedMillisecond(timestamp), value, false)
-                }
-            },
-        ),
-        /* legend = */ false,
+        TimeSeriesCollection().apply {
+            for ((key, data) in series) {
+                addSeries(data.toTimeSeries(key))
+            }
+        },
+        /* legend = */ series.size > 1,
         /* tooltips = */ true,
         /* urls = */ false,
     ).apply {
@@ -35,7 +36,8 @@ fun sparkline(data: List<MetricData>, formatter: NumberFormat): JFreeChart {
                 (this as NumberAxis).numberFormatOverride = formatter
             }
             renderer.setDefaultToolTipGenerator { dataset, series, item ->
-                "${DATE_FORMAT.format(dataset.getXValue(series, item))} - ${formatter.format(dataset.getYValue(series, item))}"
+                val value = "${DATE_FORMAT.format(dataset.getXValue(series, item))} - ${formatter.format(dataset.getYValue(series, item))}"
+                if (dataset.seriesCount > 1) "${dataset.getSeriesKey(series)}: $value" else value
             }
             isDomainGridlinesVisible = false
             isRangeGridlinesVisible = false
@@ -51,3 +53,11 @@ fun sparkline(data: List<MetricData>, formatter: NumberFormat): JFreeChart {
         }
     }
 }
+
+fun List<MetricData>.toTimeSeries(key: String): TimeSeries {
+    return TimeSeries(key).apply {
+        for ((value, timestamp) in this@toTimeSeries) {
+            add(FixedMillisecond(timestamp), value, false)
+        }
+    }
+}
@@ -4,12 +4,15 @@ import com.formdev.flatlaf.ui.FlatScrollBarUI
 import io.github.paulgriffith.kindling.core.DetailsPane
 import io.github.paulgriffith.kindling.core.ToolPanel
 import io.github.paulgriffith.kindling.utils.EDT_SCOPE
+import io.github.paulgriffith.kindling.utils.FilterList
+import io.github.paulgriffith.kindling.utils.FilterModel
 import io.github.paulgriffith.kindling.utils.FlatScrollPane
 import io.github.paulgriffith.kindling.utils.ReifiedJXTable
 import io.github.paulgriffith.kindling.utils.getValue
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
+import net.miginfocom.swing.MigLayout
 import org.jdesktop.swingx.action.AbstractActionExt
 import java.awt.Dimension
 import java.awt.Graphics
@@ -26,6 +29,7 @@ import java.time.temporal.Temporal
 import java.time.temporal.TemporalUnit
 import javax.swing.Icon
 import javax.swing.JComponent
+import javax.swing.JPanel
 import javax.swing.JScrollBar
 import javax.swing.JSplitPane
 import javax.swing.SortOrder
@@ -47,6 +51,13 @@ class LogPanel(
 
     val header = Header(totalRows)
 
+    private val sourceCounts: Map<String?, Int> = rawData.groupingBy { (it as? SystemLogsEvent)?.source }.eachCount()
+
+    /**
+     * True if [rawData] was merged from more than one source, e.g. several idb files.
+     */
+    val isMultiSource: Boolean = sourceCounts.size > 1
+
     val table = run {
         val initialModel = createModel(rawData)
         ReifiedJXTable(initialModel, initialModel.columns).apply {
@@ -73,6 +84,11 @@ class LogPanel(
     private val details = DetailsPane()
     private val sidebar = LoggerNamesPanel(rawData)
 
+    private val sourceList = FilterList("(No Source)").apply {
+        model = FilterModel(sourceCounts)
+        selectAll()
+    }
+
     private val filters: List<(LogEvent) -> Boolean> = buildList {
         add { event ->
             event.logger in sidebar.list.checkBoxListSelectedIndices
@@ -80,6 +96,11 @@ class LogPanel(
                 .filterIsInstance<LoggerName>()
                 .mapTo(mutableSetOf()) { it.name }
         }
+        if (isMultiSource) {
+            add { event ->
+                event !is SystemLogsEvent || event.source in sourceList.checkBoxListSelectedValues
+            }
+        }
         add { event ->
             when (event) {
                 is SystemLogsEvent -> {
@@ -135,7 +156,14 @@ class LogPanel(
         add(
             JSplitPane(
                 JSplitPane.HORIZONTAL_SPLIT,
-                sidebar,
+                if (isMultiSource) {
+                    JPanel(MigLayout("ins 0, fill")).apply {
+                        add(FlatScrollPane(sourceList), "growx, h 100!, wrap")
+                        add(sidebar, "push, grow")
+                    }
+                } else {
+                    sidebar
+                },
                 JSplitPane(
                     JSplitPane.VERTICAL_SPLIT,
                     tableScrollPane,
@@ -186,6 +214,12 @@ class LogPanel(
             }
         }
 
+        sourceList.checkBoxListSelectionModel.addListSelectionListener {
+            if (!it.valueIsAdjusting) {
+                updateData()
+            }
+        }
+
         header.addPropertyChangeListener("minimumLevel") {
             updateData()
         }
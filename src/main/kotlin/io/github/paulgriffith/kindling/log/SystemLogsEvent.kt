@@ -28,6 +28,7 @@ data class SystemLogsEvent(
     val level: Level,
     val mdc: Map<String, String>,
     val stacktrace: List<String>,
+    val source: String? = null,
 ) : LogEvent
 
 @Suppress("ktlint:trailing-comma-on-declaration-site")
@@ -45,6 +45,13 @@ class SystemLogsColumns(panel: LogPanel) : ColumnList<SystemLogsEvent>() {
         },
         value = SystemLogsEvent::timestamp,
     )
+    val Source by column(
+        column = {
+            minWidth = 50
+            isVisible = panel.isMultiSource
+        },
+        value = { it.source },
+    )
     val Thread by column(
         column = {
             minWidth = 50
@@ -0,0 +1,212 @@
+package io.github.paulgriffith.kindling.thread
+
+import io.github.paulgriffith.kindling.thread.model.StackTrie
+import io.github.paulgriffith.kindling.utils.escapeHtml
+import java.awt.Color
+import java.awt.Dimension
+import java.awt.Graphics
+import java.awt.Graphics2D
+import java.awt.Rectangle
+import java.awt.RenderingHints
+import java.awt.event.MouseAdapter
+import java.awt.event.MouseEvent
+import java.text.DecimalFormat
+import javax.swing.JComponent
+import javax.swing.Scrollable
+import javax.swing.ToolTipManager
+import javax.swing.UIManager
+
+/**
+ * An icicle graph (a flame graph, upside down) of a [StackTrie]: the outermost frames are at the top, and every frame
+ * is as wide as the share of [weights] that passes through it. Clicking a frame zooms in on it; clicking one of the
+ * (full width) frames above it zooms back out.
+ */
+class FlameGraph : JComponent(), Scrollable {
+    var weights: StackTrie.Weights? = null
+        set(value) {
+            // snapshots of a growing trie share their nodes, so the focus only has to go if the tree itself changed
+            if (value?.trie?.root != field?.trie?.root) {
+                focus = null
+            }
+            field = value
+            revalidate()
+            repaint()
+        }
+
+    private var focus: StackTrie.Node? = null
+        set(value) {
+            field = value
+            revalidate()
+            repaint()
+        }
+
+    init {
+        ToolTipManager.sharedInstance().registerComponent(this)
+        addMouseListener(
+            object : MouseAdapter() {
+                override fun mouseClicked(e: MouseEvent) {
+                    val node = nodeAt(e.x, e.y) ?: return
+                    focus = if (node.parent == null) null else node
+                }
+            },
+        )
+    }
+
+    private fun nodeAt(x: Int, y: Int): StackTrie.Node? {
+        val weights = weights ?: return null
+        val top = focus ?: weights.trie.root
+        val depth = y / ROW_HEIGHT
+        if (depth < top.depth) {
+            return generateSequence(top.parent) { it.parent }.first { it.depth == depth }
+        }
+
+        // walk down from the focus, narrowing to whichever child is under x
+        var node = top
+        var nodeX = 0.0
+        var nodeW = width.toDouble()
+        while (node.depth < depth) {
+            val total = weights.total(node)
+            var childX = nodeX
+            node = node.children.firstOrNull { child ->
+                val childW = nodeW * weights.total(child) / total
+                if (x >= childX && x < childX + childW) {
+                    nodeW = childW
+                    true
+                } else {
+                    childX += childW
+                    false
+                }
+            } ?: return null
+            nodeX = childX
+        }
+        return node
+    }
+
+    override fun getToolTipText(event: MouseEvent): String? {
+        val weights = weights ?: return null
+        val node = nodeAt(event.x, event.y) ?: return null
+        val total = weights.total(node)
+        val share = total / weights.total(weights.trie.root)
+        return buildString {
+            append("<html>")
+            append(node.toString().escapeHtml())
+            append("<br>")
+            append("${COUNT.format(total)} (${PERCENT.format(share)})")
+            val self = weights.self(node)
+            if (self > 0) {
+                append(", ${COUNT.format(self)} on top")
+            }
+        }
+    }
+
+    override fun getPreferredSize(): Dimension {
+        val weights = weights ?: return Dimension(0, 0)
+        val top = focus ?: weights.trie.root
+        var deepest = top.depth
+        val pending = ArrayDeque(listOf(top))
+        while (pending.isNotEmpty()) {
+            val node = pending.removeLast()
+            deepest = maxOf(deepest, node.depth)
+            pending.addAll(node.children.filter { weights.total(it) > 0 })
+        }
+        return Dimension(0, (deepest + 1) * ROW_HEIGHT)
+    }
+
+    override fun paintComponent(g: Graphics) {
+        val weights = weights ?: return
+        val top = focus ?: weights.trie.root
+        if (weights.total(top) <= 0) return
+
+        val g2 = g.create() as Graphics2D
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON)
+            val clip = g2.clipBounds ?: Rectangle(0, 0, width, height)
+
+            // the frames above the focus always fill the width
+            generateSequence(top.parent) { it.parent }.forEach { ancestor ->
+                paintNode(g2, ancestor, 0.0, width.toDouble(), dimmed = true)
+            }
+
+            val pending = ArrayDeque<Triple<StackTrie.Node, Double, Double>>()
+            pending.add(Triple(top, 0.0, width.toDouble()))
+            while (pending.isNotEmpty()) {
+                val (node, x, w) = pending.removeLast()
+                val y = node.depth * ROW_HEIGHT
+                if (w < 1 || y > clip.maxY) continue
+                if (y + ROW_HEIGHT >= clip.y) {
+                    paintNode(g2, node, x, w, dimmed = false)
+                }
+
+                val total = weights.total(node)
+                var childX = x
+                for (child in node.children) {
+                    val childW = w * weights.total(child) / total
+                    if (childW > 0) {
+                        pending.add(Triple(child, childX, childW))
+                    }
+                    childX += childW
+                }
+            }
+        } finally {
+            g2.dispose()
+        }
+    }
+
+    private fun paintNode(g: Graphics2D, node: StackTrie.Node, x: Double, w: Double, dimmed: Boolean) {
+        val bounds = Rectangle(x.toInt(), node.depth * ROW_HEIGHT, maxOf(w.toInt() - 1, 1), ROW_HEIGHT - 1)
+
+        g.color = colorFor(node, dimmed)
+        g.fill(bounds)
+
+        if (bounds.width > MIN_LABEL_WIDTH) {
+            g.color = Color.BLACK
+            val fm = g.fontMetrics
+            val label = fitLabel(node.method, bounds.width - 2 * TEXT_PADDING) { fm.stringWidth(it) }
+            g.drawString(label, bounds.x + TEXT_PADDING, bounds.y + (ROW_HEIGHT - fm.height) / 2 + fm.ascent)
+        }
+    }
+
+    private fun colorFor(node: StackTrie.Node, dimmed: Boolean): Color {
+        if (node.parent == null) {
+            return UIManager.getColor("Component.borderColor") ?: Color.LIGHT_GRAY
+        }
+        // a stable warm hue per class, so the same code is the same color wherever it appears
+        val hash = node.className.hashCode()
+        val hue = (hash and 0xFF) / 255F * 0.14F
+        val saturation = 0.45F + ((hash ushr 8) and 0xFF) / 255F * 0.3F
+        return Color.getHSBColor(hue, if (dimmed) saturation / 3 else saturation, 0.95F)
+    }
+
+    override fun getPreferredScrollableViewportSize(): Dimension = preferredSize
+    override fun getScrollableUnitIncrement(visibleRect: Rectangle, orientation: Int, direction: Int) = ROW_HEIGHT
+    override fun getScrollableBlockIncrement(visibleRect: Rectangle, orientation: Int, direction: Int): Int {
+        return visibleRect.height - ROW_HEIGHT
+    }
+
+    override fun getScrollableTracksViewportWidth() = true
+    override fun getScrollableTracksViewportHeight() = false
+
+    companion object {
+        private const val ROW_HEIGHT = 18
+        private const val TEXT_PADDING = 3
+        private const val MIN_LABEL_WIDTH = 20
+
+        private val COUNT = DecimalFormat("#,##0.##")
+        private val PERCENT = DecimalFormat("0.0%")
+
+        private val StackTrie.Node.className: String
+            get() = method.substringBeforeLast('.')
+
+        private inline fun fitLabel(label: String, width: Int, measure: (String) -> Int): String {
+            if (measure(label) <= width) return label
+            // keep the method name, which is at the end, and drop package names from the front
+            var start = 0
+            while (start < label.length) {
+                val candidate = "…" + label.substring(start)
+                if (measure(candidate) <= width) return candidate
+                start += 1
+            }
+            return ""
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.paulgriffith.kindling.thread
+
+import io.github.paulgriffith.kindling.thread.model.Thread
+import io.github.paulgriffith.kindling.thread.model.WaitForGraph
+import io.github.paulgriffith.kindling.thread.model.WaitForGraph.LockContention
+import io.github.paulgriffith.kindling.utils.ColumnList
+import io.github.paulgriffith.kindling.utils.FlatScrollPane
+import io.github.paulgriffith.kindling.utils.ReifiedJXTable
+import io.github.paulgriffith.kindling.utils.add
+import io.github.paulgriffith.kindling.utils.getAll
+import net.miginfocom.swing.MigLayout
+import java.util.EventListener
+import javax.swing.JLabel
+import javax.swing.JPanel
+import javax.swing.JSplitPane
+import javax.swing.JTree
+import javax.swing.event.EventListenerList
+import javax.swing.table.AbstractTableModel
+import javax.swing.tree.DefaultMutableTreeNode
+import javax.swing.tree.DefaultTreeModel
+import javax.swing.tree.TreePath
+
+fun interface ThreadSelectedEventListener : EventListener {
+    fun onThreadSelected(threadId: Int)
+}
+
+/**
+ * Every chain of blocked threads, and every deadlock, in every loaded dump, alongside the locks with the most threads
+ * waiting on them. Selecting a thread in the tree selects it in the thread table.
+ */
+class LockPanel : JPanel(MigLayout("ins 0, fill")) {
+    private val listeners = EventListenerList()
+
+    private val summary = JLabel("Analyzing locks...")
+
+    private val locks = ReifiedJXTable(LockModel(emptyList()), LockColumns)
+
+    private val chains = JTree(DefaultTreeModel(DefaultMutableTreeNode())).apply {
+        isRootVisible = false
+        showsRootHandles = true
+        addTreeSelectionListener { event ->
+            val node = event.path.lastPathComponent as? DefaultMutableTreeNode
+            val entry = node?.userObject as? ThreadEntry ?: return@addTreeSelectionListener
+            fireThreadSelectedEvent(entry.thread.id)
+        }
+    }
+
+    /**
+     * One graph per dump, in dump order; null for dumps that failed to load.
+     */
+    var graphs: List<WaitForGraph?> = emptyList()
+        set(value) {
+            field = value
+            val loaded = value.filterNotNull()
+            val deadlocked = loaded.sumOf { graph -> graph.cycles.sumOf { it.size } }
+            val contention = WaitForGraph.contention(loaded)
+            summary.text = "${contention.size} contended locks, $deadlocked deadlocked threads"
+            locks.model = LockModel(contention)
+            chains.model = DefaultTreeModel(buildTree(value))
+            // expand every dump and deadlock, but leave the chains themselves collapsed
+            var row = 0
+            while (row < chains.rowCount) {
+                val path: TreePath = chains.getPathForRow(row)
+                if ((path.lastPathComponent as DefaultMutableTreeNode).userObject !is ThreadEntry) {
+                    chains.expandPath(path)
+                }
+                row += 1
+            }
+        }
+
+    fun addThreadSelectedListener(listener: ThreadSelectedEventListener) {
+        listeners.add(listener)
+    }
+
+    private fun fireThreadSelectedEvent(threadId: Int) {
+        for (listener in listeners.getAll<ThreadSelectedEventListener>()) {
+            listener.onThreadSelected(threadId)
+        }
+    }
+
+    init {
+        add(summary, "wrap")
+        add(
+            JSplitPane(
+                JSplitPane.HORIZONTAL_SPLIT,
+                FlatScrollPane(locks),
+                FlatScrollPane(chains),
+            ).apply {
+                resizeWeight = 0.5
+            },
+            "push, grow",
+        )
+    }
+
+    private fun buildTree(graphs: List<WaitForGraph?>): DefaultMutableTreeNode {
+        val root = DefaultMutableTreeNode()
+        graphs.forEachIndexed { dumpIndex, graph ->
+            if (graph == null) return@forEachIndexed
+            val cycles = graph.cycles
+            val heads = graph.heads
+            if (cycles.isEmpty() && heads.isEmpty()) return@forEachIndexed
+
+            val parent = if (graphs.size > 1) {
+                DefaultMutableTreeNode("Dump ${dumpIndex + 1}").also(root::add)
+            } else {
+                root
+            }
+            cycles.forEachIndexed { i, cycle ->
+                val deadlock = DefaultMutableTreeNode("Deadlock ${i + 1} (${cycle.size} threads)")
+                for (member in cycle) {
+                    // the rest of the cycle is already listed, so only follow waiters outside it
+                    deadlock.add(chain(graph, member, exclude = cycle.toSet()))
+                }
+                parent.add(deadlock)
+            }
+            for (head in heads.sortedByDescending { graph.waitersOf(it).size }) {
+                parent.add(chain(graph, head, exclude = emptySet()))
+            }
+        }
+        return root
+    }
+
+    private fun chain(graph: WaitForGraph, thread: Int, exclude: Set<Int>): DefaultMutableTreeNode {
+        val top = DefaultMutableTreeNode(ThreadEntry(graph[thread]))
+        val pending = ArrayDeque(listOf(thread to top))
+        while (pending.isNotEmpty()) {
+            val (owner, node) = pending.removeLast()
+            for (waiter in graph.waitersOf(owner)) {
+                if (waiter in exclude) continue
+                val child = DefaultMutableTreeNode(ThreadEntry(graph[waiter]))
+                node.add(child)
+                pending.addLast(waiter to child)
+            }
+        }
+        return top
+    }
+
+    private class ThreadEntry(val thread: Thread) {
+        override fun toString(): String = buildString {
+            append(thread.name)
+            append(" (").append(thread.id).append(") ")
+            append(thread.state)
+            thread.blocker?.let { blocker ->
+                append(" waiting for ").append(blocker.lock)
+            }
+        }
+    }
+
+    private class LockModel(private val contention: List<LockContention>) : AbstractTableModel() {
+        override fun getColumnName(column: Int): String = LockColumns[column].header
+        override fun getRowCount(): Int = contention.size
+        override fun getColumnCount(): Int = LockColumns.size
+        override fun getValueAt(row: Int, column: Int): Any? = LockColumns[column].getValue(contention[row])
+        override fun getColumnClass(column: Int): Class<*> = LockColumns[column].clazz
+    }
+
+    @Suppress("unused")
+    object LockColumns : ColumnList<LockContention>() {
+        val Lock by column { it.lock }
+        val Owner by column { it.owner }
+        val Waiters by column { it.waiters }
+        val MaxWaiters by column(name = "Max Waiters") { it.maxWaiters }
+        val Dumps by column { it.dumps }
+    }
+}
@@ -1,7 +1,9 @@
 package io.github.paulgriffith.kindling.thread
 
 import com.formdev.flatlaf.extras.FlatSVGIcon
+import com.formdev.flatlaf.extras.components.FlatTabbedPane
 import com.jidesoft.comparator.AlphanumComparator
+import com.jidesoft.swing.CheckBoxList
 import com.jidesoft.swing.CheckBoxListSelectionModel
 import io.github.paulgriffith.kindling.core.ClipboardTool
 import io.github.paulgriffith.kindling.core.Detail
@@ -10,10 +12,12 @@ import io.github.paulgriffith.kindling.core.MultiTool
 import io.github.paulgriffith.kindling.core.ToolOpeningException
 import io.github.paulgriffith.kindling.core.ToolPanel
 import io.github.paulgriffith.kindling.core.add
-import io.github.paulgriffith.kindling.thread.FilterModel.Companion.byCountAsc
-import io.github.paulgriffith.kindling.thread.FilterModel.Companion.byCountDesc
-import io.github.paulgriffith.kindling.thread.FilterModel.Companion.byNameAsc
-import io.github.paulgriffith.kindling.thread.FilterModel.Companion.byNameDesc
+import io.github.paulgriffith.kindling.thread.model.InternedStacktrace
+import io.github.paulgriffith.kindling.thread.model.LifespanBuilder
+import io.github.paulgriffith.kindling.thread.model.PoolStatistics
+import io.github.paulgriffith.kindling.thread.model.ProfileReport
+import io.github.paulgriffith.kindling.thread.model.StackFrameTable
+import io.github.paulgriffith.kindling.thread.model.StackTrie
 import io.github.paulgriffith.kindling.thread.model.Stacktrace
 import io.github.paulgriffith.kindling.thread.model.Thread
 import io.github.paulgriffith.kindling.thread.model.ThreadDump
@@ -21,18 +25,43 @@ import io.github.paulgriffith.kindling.thread.model.ThreadLifespan
 import io.github.paulgriffith.kindling.thread.model.ThreadModel
 import io.github.paulgriffith.kindling.thread.model.ThreadModel.MultiThreadColumns
 import io.github.paulgriffith.kindling.thread.model.ThreadModel.SingleThreadColumns
+import io.github.paulgriffith.kindling.thread.model.ThreadSearchIndex
+import io.github.paulgriffith.kindling.thread.model.ThreadSession
+import io.github.paulgriffith.kindling.thread.model.WaitForGraph
 import io.github.paulgriffith.kindling.utils.Action
+import io.github.paulgriffith.kindling.utils.ClassLinkIndex
 import io.github.paulgriffith.kindling.utils.Column
 import io.github.paulgriffith.kindling.utils.EDT_SCOPE
+import io.github.paulgriffith.kindling.utils.FileExtensionFilter
+import io.github.paulgriffith.kindling.utils.FilterComparator
+import io.github.paulgriffith.kindling.utils.FilterList
+import io.github.paulgriffith.kindling.utils.FilterModel
+import io.github.paulgriffith.kindling.utils.FilterModel.Companion.byCountAsc
+import io.github.paulgriffith.kindling.utils.FilterModel.Companion.byCountDesc
+import io.github.paulgriffith.kindling.utils.FilterModel.Companion.byNameAsc
+import io.github.paulgriffith.kindling.utils.FilterModel.Companion.byNameDesc
 import io.github.paulgriffith.kindling.utils.FlatScrollPane
 import io.github.paulgriffith.kindling.utils.ReifiedJXTable
 import io.github.paulgriffith.kindling.utils.attachPopupMenu
 import io.github.paulgriffith.kindling.utils.escapeHtml
+import io.github.paulgriffith.kindling.utils.getLogger
 import io.github.paulgriffith.kindling.utils.getValue
+import io.github.paulgriffith.kindling.utils.runWithProgress
 import io.github.paulgriffith.kindling.utils.selectedRowIndices
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.ensureActive
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
 import net.miginfocom.swing.MigLayout
 import org.jdesktop.swingx.JXSearchField
 import org.jdesktop.swingx.decorator.ColorHighlighter
@@ -40,13 +69,19 @@ import org.jdesktop.swingx.table.ColumnControlButton
 import org.jdesktop.swingx.table.TableColumnExt
 import java.awt.Desktop
 import java.awt.Rectangle
+import java.io.File
 import java.nio.file.Files
 import java.nio.file.Path
+import java.nio.file.StandardWatchEventKinds.ENTRY_CREATE
+import java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY
+import java.util.concurrent.TimeUnit
 import javax.swing.ButtonGroup
 import javax.swing.Icon
+import javax.swing.JFileChooser
 import javax.swing.JLabel
 import javax.swing.JMenu
 import javax.swing.JMenuBar
+import javax.swing.JOptionPane
 import javax.swing.JPanel
 import javax.swing.JPopupMenu
 import javax.swing.JSplitPane
@@ -54,17 +89,50 @@ import javax.swing.JToggleButton
 import javax.swing.ListSelectionModel
 import javax.swing.SortOrder
 import javax.swing.UIManager
+import kotlin.io.path.extension
 import kotlin.io.path.inputStream
+import kotlin.io.path.isRegularFile
+import kotlin.io.path.listDirectoryEntries
 import kotlin.io.path.name
 import kotlin.io.path.nameWithoutExtension
 import kotlin.io.path.outputStream
 
+/**
+ * @param watchDirectory if set, a folder to keep watching for new dumps, which are added to the view as they arrive.
+ * @param frames the table [results] were interned into; dumps added later are interned into it too.
+ * @param filters the filters to start with, e.g. as saved in a [ThreadSession].
+ */
 class MultiThreadView(
-    private val paths: List<Path>,
+    paths: List<Path>,
+    results: List<Result<ThreadDump>>,
+    private val watchDirectory: Path? = null,
+    private val frames: StackFrameTable = StackFrameTable(),
+    filters: ThreadSession.Filters? = null,
 ) : ToolPanel() {
-    private val threadDumps = paths.map { path ->
-        ThreadDump.fromStream(path.inputStream()) ?: throw ToolOpeningException("Failed to open $path as a thread dump")
-    }
+    private val paths: MutableList<Path> = paths.toMutableList()
+
+    /**
+     * One entry per path; null wherever that file couldn't be parsed.
+     */
+    private val threadDumps: MutableList<ThreadDump?> = results.mapTo(mutableListOf()) { it.getOrNull() }
+
+    /**
+     * Why each of the paths with no dump couldn't be loaded.
+     */
+    private val failures: MutableMap<Path, Throwable> = paths.zip(results).mapNotNull { (path, result) ->
+        result.exceptionOrNull()?.let { path to it }
+    }.toMap(mutableMapOf())
+
+    private val firstThreadDump = threadDumps.firstNotNullOfOrNull { it }
+        ?: throw ToolOpeningException(
+            "Failed to open ${paths.joinToString()} as thread dumps",
+            results.first().exceptionOrNull(),
+        )
+
+    /**
+     * Deadlocked threads, as reported by the dumps themselves, and then also as found by [WaitForGraph].
+     */
+    private var deadlockIds: Set<Int> = threadDumps.flatMapTo(HashSet()) { it?.deadlockIds.orEmpty() }
 
     private val poolList = FilterList("(No Pool)")
     private val systemList = FilterList("Unassigned")
@@ -72,10 +140,13 @@ class MultiThreadView(
     private val searchField = JXSearchField("Search")
 
     private var visibleThreadDumps: List<ThreadDump?> = emptyList()
-        set(value) {
-            field = value
-            currentLifespanList = value.toLifespanList()
-        }
+    private var lifespans = LifespanBuilder()
+
+    private fun showThreadDumps(threadDumps: List<ThreadDump?>) {
+        visibleThreadDumps = threadDumps
+        lifespans = LifespanBuilder(threadDumps)
+        currentLifespanList = lifespans.build()
+    }
 
     private var currentLifespanList: List<ThreadLifespan> = emptyList()
         set(value) {
@@ -93,7 +164,7 @@ class MultiThreadView(
 
     private val mainTable: ReifiedJXTable<ThreadModel> = run {
         // populate initial state of all the filter lists
-        visibleThreadDumps = threadDumps
+        showThreadDumps(threadDumps)
         val initialModel = ThreadModel(currentLifespanList)
 
         ReifiedJXTable(initialModel).apply {
@@ -105,9 +176,7 @@ class MultiThreadView(
             addHighlighter(
                 ColorHighlighter(
                     { _, adapter ->
-                        threadDumps.any { threadDump ->
-                            model[adapter.row, model.columns.id] in threadDump.deadlockIds
-                        }
+                        model[adapter.convertRowIndexToModel(adapter.row), model.columns.id] in deadlockIds
                     },
                     UIManager.getColor("Actions.Red"),
                     null,
@@ -196,16 +265,44 @@ class MultiThreadView(
         }
     }
 
-    private var comparison = ThreadComparisonPane(threadDumps.size, threadDumps[0].version)
+    private var comparison = ThreadComparisonPane(threadDumps.size, firstThreadDump.version)
+
+    private val flameGraph = FlameGraph()
+    private val profile = ProfilePanel()
+    private val lockPanel = LockPanel()
+    private val stuckThreads = StuckThreadsPanel()
+    private val poolCharts = PoolChartsPanel()
+
+    @Volatile
+    private var stackTrie: StackTrie? = null
+
+    @Volatile
+    private var searchIndex: ThreadSearchIndex? = null
+
+    /**
+     * Held until the initial lock graphs and search index are built. Dumps arriving in a watched folder wait on it, so
+     * they're always analyzed, and added to the view, after everything before them.
+     */
+    private val analysisLock = Mutex(locked = true)
+
+    /**
+     * The tree behind [stackTrie]; only set (on the EDT) once the initial dumps have been merged into it.
+     */
+    private var trieBuilder: StackTrie.Builder? = null
+    private var watchJob: Job? = null
+
+    /**
+     * Statistics for every dump so far; only set (on the EDT) once the initial dumps have been read.
+     */
+    private var poolStatistics: PoolStatistics.Builder? = null
 
-    private val threadDumpCheckboxList = ThreadDumpCheckboxList(paths).apply {
+    private val threadDumpCheckboxList = ThreadDumpCheckboxList(paths, failures).apply {
         isVisible = !mainTable.model.isSingleContext
     }
 
     private var listModelsAdjusting = false
 
     private val exportMenu = run {
-        val firstThreadDump = threadDumps.first()
         val fileName = "threaddump_${firstThreadDump.version}_${firstThreadDump.hashCode()}"
         exportMenu(fileName) { mainTable.model }
     }
@@ -215,35 +312,42 @@ class MultiThreadView(
         exportMenu.isEnabled = mainTable.model.isSingleContext
     }
 
-    private fun filter(thread: Thread?): Boolean {
-        if (thread == null) {
-            return false
-        }
-
-        if (thread.state.name !in stateList.checkBoxListSelectedValues ||
-            thread.system !in systemList.checkBoxListSelectedValues ||
-            thread.pool !in poolList.checkBoxListSelectedValues
-        ) {
-            return false
-        }
-
-        val query = searchField.text ?: return true
-
-        return thread.id.toString().contains(query) ||
-            thread.name.contains(query, ignoreCase = true) ||
-            thread.system != null && thread.system.contains(query, ignoreCase = true) ||
-            thread.scope != null && thread.scope.contains(query, ignoreCase = true) ||
-            thread.state.name.contains(query, ignoreCase = true) ||
-            thread.stacktrace.any { stack -> stack.contains(query, ignoreCase = true) }
+    /**
+     * Snapshots the current filters; must be called on the EDT. The search itself is only run (once, lazily) on
+     * whichever background job first needs it.
+     */
+    private fun currentFilter(): ThreadFilter {
+        return ThreadFilter(
+            states = stateList.checkBoxListSelectedValues.toSet(),
+            systems = systemList.checkBoxListSelectedValues.toSet(),
+            pools = poolList.checkBoxListSelectedValues.toSet(),
+            query = searchField.text?.takeIf { it.isNotEmpty() },
+            index = searchIndex,
+        )
     }
 
+    // only touched on the EDT; every update supersedes the ones before it
+    private var updateJob: Job? = null
+    private var updateGeneration = 0
+    private var analysisJob: Job? = null
+    private var analysisGeneration = 0
+
     private fun updateData() {
-        BACKGROUND.launch {
+        val filter = currentFilter()
+        updateAnalysis(filter)
+
+        updateJob?.cancel()
+        val generation = ++updateGeneration
+        updateJob = BACKGROUND.launch {
             val filteredThreadDumps = currentLifespanList.filter { lifespan ->
-                lifespan.any(::filter)
+                ensureActive()
+                lifespan.any(filter)
             }
+            val stuckThreadFindings = StuckThreadsPanel.find(filteredThreadDumps)
 
             EDT_SCOPE.launch {
+                if (generation != updateGeneration) return@launch
+
                 val selectedID = if (!mainTable.selectionModel.isSelectionEmpty) {
                     /* Maintain selection when model changes */
                     val previousSelectedIndex = mainTable.convertRowIndexToModel(mainTable.selectedRow)
@@ -260,6 +364,7 @@ class MultiThreadView(
                 mainTable.model = newModel
                 mainTable.createDefaultColumnsFromModel()
                 exportMenu.isEnabled = newModel.isSingleContext
+                stuckThreads.findings = stuckThreadFindings
 
                 if (selectedID != null) {
                     val newSelectedIndex = mainTable.model.threadData.indexOfFirst { lifespan ->
@@ -282,16 +387,41 @@ class MultiThreadView(
         }
     }
 
+    /**
+     * Re-weighs the (already built) flame graph and profile by the current filters; the tree itself never changes.
+     */
+    private fun updateAnalysis(filter: ThreadFilter = currentFilter()) {
+        val trie = stackTrie ?: return
+        analysisJob?.cancel()
+        val generation = ++analysisGeneration
+        val visible = visibleThreadDumps
+        analysisJob = BACKGROUND.launch {
+            val include = { dumpIndex: Int, thread: Thread -> visible[dumpIndex] != null && filter(thread) }
+            val weights = trie.weigh { dumpIndex, thread -> if (include(dumpIndex, thread)) 1.0 else 0.0 }
+            ensureActive()
+            val report = ProfileReport.from(trie, include)
+            EDT_SCOPE.launch {
+                if (generation != analysisGeneration) return@launch
+                flameGraph.weights = weights
+                profile.report = report
+            }
+        }
+    }
+
     init {
-        name = if (mainTable.model.isSingleContext) {
-            paths.first().name
-        } else {
-            "[${paths.size}] " + paths.fold(paths.first().nameWithoutExtension) { acc, next ->
+        name = when {
+            watchDirectory != null -> watchDirectory.name
+            mainTable.model.isSingleContext -> paths.first().name
+            else -> "[${paths.size}] " + paths.fold(paths.first().nameWithoutExtension) { acc, next ->
                 acc.commonPrefixWith(next.nameWithoutExtension)
             }
         }
 
-        toolTipText = paths.joinToString("\n", transform = Path::name)
+        toolTipText = if (watchDirectory != null) {
+            "Watching $watchDirectory"
+        } else {
+            paths.joinToString("\n", transform = Path::name)
+        }
 
         poolList.selectAll()
         poolList.checkBoxListSelectionModel.bind()
@@ -306,7 +436,7 @@ class MultiThreadView(
 
         threadDumpCheckboxList.checkBoxListSelectionModel.apply {
             addListSelectionListener { event ->
-                if (!event.valueIsAdjusting) {
+                if (!event.valueIsAdjusting && !listModelsAdjusting) {
                     listModelsAdjusting = true
 
                     val selectedThreadDumps = List(threadDumps.size) { i ->
@@ -316,7 +446,7 @@ class MultiThreadView(
                             null
                         }
                     }
-                    visibleThreadDumps = selectedThreadDumps
+                    showThreadDumps(selectedThreadDumps)
                     listModelsAdjusting = false
                 }
             }
@@ -335,13 +465,16 @@ class MultiThreadView(
             }
         }
 
-        comparison.addBlockerSelectedListener { selectedID ->
-            for (i in 0 until mainTable.model.rowCount) {
-                if (selectedID == mainTable.model[i, mainTable.model.columns.id]) {
-                    val rowIndex = mainTable.convertRowIndexToView(i)
-                    mainTable.selectionModel.setSelectionInterval(0, rowIndex)
-                    mainTable.scrollRectToVisible(Rectangle(mainTable.getCellRect(rowIndex, 0, true)))
-                    break
+        comparison.addBlockerSelectedListener(::selectThread)
+        lockPanel.addThreadSelectedListener(::selectThread)
+        stuckThreads.addThreadSelectedListener(::selectThread)
+        val initialLifespans = currentLifespanList
+        val initialGeneration = updateGeneration
+        updateJob = BACKGROUND.launch {
+            val findings = StuckThreadsPanel.find(initialLifespans)
+            EDT_SCOPE.launch {
+                if (initialGeneration == updateGeneration) {
+                    stuckThreads.findings = findings
                 }
             }
         }
@@ -356,7 +489,7 @@ class MultiThreadView(
             add(sortButton(NATURAL_SORT_DESCENDING, "Sort Z-A", byNameDesc))
         }
 
-        add(JLabel("Version: ${threadDumps[0].version}"))
+        add(JLabel("Version: ${firstThreadDump.version}"))
         add(threadDumpCheckboxList, "gapleft 20px, pushx, growx, shpx 200")
         add(exportButton, "gapright 8")
         add(searchField, "wmin 300, wrap")
@@ -377,7 +510,14 @@ class MultiThreadView(
                     add(FlatScrollPane(poolList), "w 220, pushy 300, growy")
                     add(FlatScrollPane(mainTable), "newline, spany, pushx, grow")
                 },
-                comparison,
+                FlatTabbedPane().apply {
+                    addTab("Comparison", comparison)
+                    addTab("Flame Graph", FlatScrollPane(flameGraph))
+                    addTab("Profile", profile)
+                    addTab("Locks", lockPanel)
+                    addTab("Stuck Threads", stuckThreads)
+                    addTab("Pools", poolCharts)
+                },
             ).apply {
                 resizeWeight = 0.5
                 isOneTouchExpandable = true
@@ -388,6 +528,260 @@ class MultiThreadView(
 
     private val initialized = true
 
+    init {
+        if (filters != null) {
+            restoreFilters(filters)
+        }
+        val initialThreadDumps = threadDumps.toList()
+        BACKGROUND.launch {
+            try {
+                coroutineScope {
+                    launch {
+                        searchIndex = ThreadSearchIndex(initialThreadDumps)
+                    }
+                    launch {
+                        val builder = StackTrie.builder(initialThreadDumps, frames)
+                        val trie = builder.build()
+                        EDT_SCOPE.launch {
+                            trieBuilder = builder
+                            stackTrie = trie
+                            updateAnalysis()
+                        }
+                    }
+                    launch {
+                        val statistics = PoolStatistics.Builder()
+                        initialThreadDumps.forEach(statistics::append)
+                        val snapshot = statistics.build()
+                        EDT_SCOPE.launch {
+                            poolStatistics = statistics
+                            poolCharts.statistics = snapshot
+                        }
+                    }
+                    val graphs = initialThreadDumps.map { threadDump -> threadDump?.let(::WaitForGraph) }
+                    EDT_SCOPE.launch {
+                        lockPanel.graphs = graphs
+                        addDeadlocks(graphs.filterNotNull())
+                    }
+                }
+            } finally {
+                analysisLock.unlock()
+            }
+        }
+    }
+
+    private fun addDeadlocks(graphs: List<WaitForGraph>) {
+        val deadlocked = graphs.flatMapTo(HashSet()) { graph ->
+            graph.cycles.flatten().map { graph[it].id }
+        }
+        deadlockIds = deadlockIds + deadlocked
+        mainTable.repaint()
+    }
+
+    /**
+     * Appends a dump (from a watched folder) as a new column of every lifespan. Called on the EDT, in arrival order.
+     */
+    private fun addThreadDump(
+        path: Path,
+        result: Result<ThreadDump>,
+        graph: WaitForGraph?,
+        partialTrie: StackTrie.Partial,
+    ) {
+        // a dump from some other gateway can't be lined up with the rest, so it's listed as a failure
+        val threadDump = result.getOrNull()
+        val error = result.exceptionOrNull() ?: runCatching { lifespans.append(threadDump) }.exceptionOrNull()
+        val added = threadDump.takeIf { error == null }
+        if (added == null) {
+            lifespans.append(null)
+        }
+
+        paths.add(path)
+        threadDumps += added
+        if (error != null) {
+            failures[path] = error
+        }
+        visibleThreadDumps = visibleThreadDumps + added
+
+        listModelsAdjusting = true
+        threadDumpCheckboxList.add(path, error)
+        threadDumpCheckboxList.isVisible = true
+        comparison.totalThreadDumps = threadDumps.size
+        deadlockIds = deadlockIds + added?.deadlockIds.orEmpty()
+        lockPanel.graphs = lockPanel.graphs + graph.takeIf { added != null }
+        if (added != null && graph != null) {
+            addDeadlocks(listOf(graph))
+        }
+        currentLifespanList = lifespans.build()
+        listModelsAdjusting = false
+
+        trieBuilder?.let { builder ->
+            builder.merge(if (added != null) partialTrie else StackTrie.partial(null, frames))
+            stackTrie = builder.build()
+            updateAnalysis()
+        }
+        poolStatistics?.let { statistics ->
+            statistics.append(added)
+            poolCharts.statistics = statistics.build()
+        }
+    }
+
+    private suspend fun watch(directory: Path) {
+        directory.fileSystem.newWatchService().use { watchService ->
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY)
+
+            // files are picked up once nothing's been written to them for a while, so half-written dumps aren't parsed
+            val lastModified = mutableMapOf<Path, Long>()
+            // anything written while the view wasn't watching
+            for (path in directory.listDirectoryEntries()) {
+                if (path !in watchedPaths && isThreadDump(path)) {
+                    lastModified[path] = 0
+                }
+            }
+
+            while (true) {
+                val key = runInterruptible { watchService.poll(WATCH_POLL_MILLIS, TimeUnit.MILLISECONDS) }
+                if (key != null) {
+                    for (event in key.pollEvents()) {
+                        val path = directory.resolve(event.context() as? Path ?: continue)
+                        if (path !in watchedPaths && isThreadDump(path)) {
+                            lastModified[path] = System.currentTimeMillis()
+                        }
+                    }
+                    key.reset()
+                }
+
+                val now = System.currentTimeMillis()
+                val settled = lastModified.filterValues { now - it >= WATCH_SETTLE_MILLIS }.keys
+                    .sortedWith(compareBy(AlphanumComparator(), Path::name))
+                for (path in settled) {
+                    lastModified.remove(path)
+                    watchedPaths.add(path)
+                    val result = load(listOf(path), frames).single()
+                    analysisLock.withLock {
+                        val threadDump = result.getOrNull()
+                        searchIndex?.add(threadDump)
+                        val graph = threadDump?.let(::WaitForGraph)
+                        val partialTrie = StackTrie.partial(threadDump, frames)
+                        EDT_SCOPE.launch {
+                            addThreadDump(path, result, graph, partialTrie)
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Every path that's been (or is being) loaded; only touched by whichever watch job is running.
+     */
+    private val watchedPaths = paths.toMutableSet()
+
+    override fun addNotify() {
+        super.addNotify()
+        if (watchDirectory != null && watchJob == null) {
+            watchJob = BACKGROUND.launch(Dispatchers.IO) {
+                watch(watchDirectory)
+            }
+        }
+    }
+
+    override fun removeNotify() {
+        super.removeNotify()
+        watchJob?.cancel()
+        watchJob = null
+    }
+
+    private fun currentSession(): ThreadSession {
+        fun FilterList.selectedValues() = checkBoxListSelectedValues.filter { it !== CheckBoxList.ALL_ENTRY }
+
+        return ThreadSession(
+            names = paths.map(Path::name),
+            results = paths.zip(threadDumps) { path, threadDump ->
+                if (threadDump != null) {
+                    Result.success(threadDump)
+                } else {
+                    Result.failure(failures[path] ?: ToolOpeningException("Failed to open $path as a thread dump"))
+                }
+            },
+            filters = ThreadSession.Filters(
+                states = stateList.selectedValues().map { it as String },
+                systems = systemList.selectedValues().map { it as String? },
+                pools = poolList.selectedValues().map { it as String? },
+                query = searchField.text?.takeIf { it.isNotEmpty() },
+                visibleDumps = threadDumps.indices.filter { threadDumpCheckboxList.checkBoxListSelectionModel.isSelectedIndex(it + 1) },
+            ),
+        )
+    }
+
+    private fun restoreFilters(filters: ThreadSession.Filters) {
+        // the "All" entry isn't saved, so it's checked again whenever everything else is
+        fun FilterList.restore(values: List<String?>) {
+            checkBoxListSelectionModel.clearSelection()
+            if (values.size == model.size - 1) {
+                selectAll()
+            } else {
+                addCheckBoxListSelectedValues(values.toTypedArray())
+            }
+        }
+
+        listModelsAdjusting = true
+        stateList.restore(filters.states)
+        systemList.restore(filters.systems)
+        poolList.restore(filters.pools)
+        searchField.text = filters.query
+        threadDumpCheckboxList.checkBoxListSelectionModel.apply {
+            clearSelection()
+            if (filters.visibleDumps.size == threadDumps.size) {
+                addSelectionInterval(0, threadDumps.size)
+            } else {
+                for (i in filters.visibleDumps) {
+                    addSelectionInterval(i + 1, i + 1)
+                }
+            }
+        }
+        listModelsAdjusting = false
+
+        // one update, for everything at once
+        showThreadDumps(List(threadDumps.size) { i -> threadDumps[i].takeIf { i in filters.visibleDumps } })
+    }
+
+    private fun saveSession() {
+        exportFileChooser.apply {
+            selectedFile = File("$name.${ThreadSession.EXTENSION}")
+            resetChoosableFileFilters()
+            fileFilter = FileExtensionFilter("Thread dump session", listOf(ThreadSession.EXTENSION))
+            if (showSaveDialog(this@MultiThreadView) != JFileChooser.APPROVE_OPTION) return
+        }
+        val selected = exportFileChooser.selectedFile.toPath()
+        val path = if (selected.extension == ThreadSession.EXTENSION) {
+            selected
+        } else {
+            selected.resolveSibling("${selected.name}.${ThreadSession.EXTENSION}")
+        }
+
+        val session = currentSession()
+        runCatching {
+            runWithProgress("Saving session", 1) { step ->
+                session.write(path)
+                step(path.name)
+            }
+        }.onFailure { ex ->
+            LOGGER.error("Failed to save session to $path", ex)
+            JOptionPane.showMessageDialog(this, "Failed to save session: ${ex.message}", "Error", JOptionPane.ERROR_MESSAGE)
+        }
+    }
+
+    private fun selectThread(id: Int) {
+        for (i in 0 until mainTable.model.rowCount) {
+            if (id == mainTable.model[i, mainTable.model.columns.id]) {
+                val rowIndex = mainTable.convertRowIndexToView(i)
+                if (rowIndex < 0) return
+                mainTable.selectionModel.setSelectionInterval(0, rowIndex)
+                mainTable.scrollRectToVisible(Rectangle(mainTable.getCellRect(rowIndex, 0, true)))
+                break
+            }
+        }
+    }
+
     override val icon = MultiThreadViewer.icon
 
     private fun sortButton(icon: Icon, description: String, comparator: FilterComparator): JToggleButton {
@@ -408,7 +802,13 @@ class MultiThreadView(
         menu.add(
             Action(name = "Open in External Editor") {
                 val desktop = Desktop.getDesktop()
-                paths.forEach { desktop.open(it.toFile()) }
+                // dumps opened from a session may not exist on this machine
+                paths.filter(Files::exists).forEach { desktop.open(it.toFile()) }
+            },
+        )
+        menu.add(
+            Action(name = "Save Session...") {
+                saveSession()
             },
         )
     }
@@ -421,50 +821,129 @@ class MultiThreadView(
         }
     }
 
+    private class ThreadFilter(
+        private val states: Set<Any?>,
+        private val systems: Set<Any?>,
+        private val pools: Set<Any?>,
+        private val query: String?,
+        index: ThreadSearchIndex?,
+    ) : (Thread?) -> Boolean {
+        private val matches: ThreadSearchIndex.Matches? by lazy {
+            if (query != null) index?.search(query) else null
+        }
+
+        override fun invoke(thread: Thread?): Boolean {
+            if (thread == null) {
+                return false
+            }
+
+            if (thread.state.name !in states ||
+                thread.system !in systems ||
+                thread.pool !in pools
+            ) {
+                return false
+            }
+
+            if (query == null) return true
+
+            if (thread.id.toString().contains(query) || thread.state.name.contains(query, ignoreCase = true)) {
+                return true
+            }
+
+            // until the index is built, fall back to checking every frame
+            return matches?.contains(thread) ?: (
+                thread.name.contains(query, ignoreCase = true) ||
+                    thread.system != null && thread.system.contains(query, ignoreCase = true) ||
+                    thread.scope != null && thread.scope.contains(query, ignoreCase = true) ||
+                    thread.stacktrace.any { stack -> stack.contains(query, ignoreCase = true) }
+                )
+        }
+    }
+
     companion object {
         private val BACKGROUND = CoroutineScope(Dispatchers.Default)
 
+        private val LOGGER = getLogger<MultiThreadView>()
+
+        /**
+         * How many files are read and parsed at once; parsing is CPU bound, so there's no point going much wider.
+         */
+        private val LOAD_PARALLELISM = Runtime.getRuntime().availableProcessors().coerceIn(2, 8)
+
+        /**
+         * A watched file is only loaded once it's gone this long without being written to.
+         */
+        private const val WATCH_SETTLE_MILLIS = 1000L
+        private const val WATCH_POLL_MILLIS = 250L
+
+        /**
+         * The least time between one trie rebuild and the next, while dumps keep arriving.
+         */
+
         private val NATURAL_SORT_ASCENDING = FlatSVGIcon("icons/bx-sort-a-z.svg")
         private val NATURAL_SORT_DESCENDING = FlatSVGIcon("icons/bx-sort-z-a.svg")
         private val NUMERIC_SORT_ASCENDING = FlatSVGIcon("icons/bx-sort-up.svg")
         private val NUMERIC_SORT_DESCENDING = FlatSVGIcon("icons/bx-sort-down.svg")
 
-        private fun List<ThreadDump?>.toLifespanList(): List<ThreadLifespan> {
-            val idsToLifespans = mutableMapOf<Int, Array<Thread?>>()
-            forEachIndexed { i, threadDump ->
-                for (thread in threadDump?.threads.orEmpty()) {
-                    val array = idsToLifespans.getOrPut(thread.id) { arrayOfNulls(size) }
-                    array[i] = thread
-                    val distinctNames = array.mapNotNull { it?.name }.distinct()
-                    require(distinctNames.size == 1) {
-                        """Thread dumps must be from the same gateway and runtime instance.
-                           Thread dump number ${i + 1} caused this issue.
-                           ID ${thread.id} differs.
-                        """.trimMargin()
+        /**
+         * Parses every one of [paths] concurrently, calling [onLoaded] as each finishes. The results are in the same
+         * order as [paths]; a file that fails to parse is a failed result rather than an exception. Every stack is
+         * interned into [frames], so frames and stacks repeated across threads and dumps are only held once.
+         */
+        suspend fun load(
+            paths: List<Path>,
+            frames: StackFrameTable = StackFrameTable(),
+            onLoaded: (Path) -> Unit = {},
+        ): List<Result<ThreadDump>> = coroutineScope {
+            val permits = Semaphore(LOAD_PARALLELISM)
+            paths.map { path ->
+                async(Dispatchers.IO) {
+                    permits.withPermit {
+                        runCatching {
+                            val threadDump = path.inputStream().use(ThreadDump::fromStream)
+                            frames.intern(threadDump)
+                        }.onFailure { ex ->
+                            if (ex is CancellationException) throw ex
+                            LOGGER.warn("Failed to open $path as a thread dump", ex)
+                        }.also {
+                            onLoaded(path)
+                        }
                     }
                 }
-            }
-            return idsToLifespans.map { it.value.toList() }
+            }.awaitAll()
+        }
+
+        /**
+         * Whether [path] looks like a dump this viewer can open; used to pick files out of a watched folder.
+         */
+        fun isThreadDump(path: Path): Boolean {
+            return !path.name.startsWith(".") && path.extension in MultiThreadViewer.extensions && path.isRegularFile()
         }
 
         private val classnameRegex = """(.*/)?(?<path>[^\s\d$]*)[.$].*\(.*\)""".toRegex()
 
         fun Stacktrace.linkify(version: String): List<BodyLine> {
-            val (_, classmap) = classMapsByVersion.entries.find { (classMapVersion, _) ->
-                classMapVersion in version
+            val (_, links) = classLinksByVersion.entries.find { (linksVersion, _) ->
+                linksVersion in version
             } ?: return map(Detail::BodyLine)
 
-            return map { line ->
-                val escapedLine = line.escapeHtml()
-                val matchResult = classnameRegex.find(line)
+            // interned frames are only ever linkified once, however many stacks they're in
+            return if (this is InternedStacktrace) {
+                List(size) { i -> table.derive(links, frameIdAt(i)) { frame -> frame.linkify(links) } }
+            } else {
+                map { line -> line.linkify(links) }
+            }
+        }
+
+        private fun String.linkify(links: ClassLinkIndex): BodyLine {
+            val escapedLine = escapeHtml()
+            val matchResult = classnameRegex.find(this)
 
-                if (matchResult != null) {
-                    val path by matchResult.groups
-                    val url = classmap[path.value] as String?
-                    BodyLine(escapedLine, url)
-                } else {
-                    BodyLine(escapedLine)
-                }
+            return if (matchResult != null) {
+                val path by matchResult.groups
+                BodyLine(escapedLine, links[path.value])
+            } else {
+                BodyLine(escapedLine)
             }
         }
 
@@ -505,12 +984,53 @@ class MultiThreadView(
 
 object MultiThreadViewer : MultiTool, ClipboardTool {
     override val title = "Thread Viewer"
-    override val description = "Thread dump (.json or .txt) files"
+    override val description = "Thread dump (.json, .txt or .${ThreadSession.EXTENSION}) files"
     override val icon = FlatSVGIcon("icons/bx-file.svg")
-    override val extensions = listOf("json", "txt")
+    override val extensions = listOf("json", "txt", ThreadSession.EXTENSION)
     override fun open(path: Path): ToolPanel = open(listOf(path))
     override fun open(paths: List<Path>): ToolPanel {
-        return MultiThreadView(paths.sortedWith(compareBy(AlphanumComparator(), Path::name)))
+        if (paths.any { it.extension == ThreadSession.EXTENSION }) {
+            val session = paths.singleOrNull()
+                ?: throw ToolOpeningException("Thread dump sessions have to be opened on their own")
+            return openSession(session)
+        }
+
+        val sorted = paths.sortedWith(compareBy(AlphanumComparator(), Path::name))
+        val results = runWithProgress("Opening thread dumps", sorted.size) { step ->
+            MultiThreadView.load(sorted) { path -> step(path.name) }
+        }
+        return MultiThreadView(sorted, results)
+    }
+
+    /**
+     * Reopens a session saved from a [MultiThreadView], without parsing any of its dumps again.
+     */
+    private fun openSession(path: Path): ToolPanel {
+        val frames = StackFrameTable()
+        val session = ThreadSession.read(path, frames)
+        return MultiThreadView(
+            paths = session.names.map(path::resolveSibling),
+            results = session.results,
+            frames = frames,
+            filters = session.filters,
+        )
+    }
+
+    /**
+     * Opens every dump already in [directory], then keeps watching it, adding each new dump as it's written.
+     */
+    fun watch(directory: Path): ToolPanel {
+        val sorted = directory.listDirectoryEntries()
+            .filter(MultiThreadView::isThreadDump)
+            .sortedWith(compareBy(AlphanumComparator(), Path::name))
+        if (sorted.isEmpty()) {
+            throw ToolOpeningException("$directory doesn't contain any thread dumps yet")
+        }
+        val frames = StackFrameTable()
+        val results = runWithProgress("Opening thread dumps", sorted.size) { step ->
+            MultiThreadView.load(sorted, frames) { path -> step(path.name) }
+        }
+        return MultiThreadView(sorted, results, watchDirectory = directory, frames = frames)
     }
 
     override fun open(data: String): ToolPanel {
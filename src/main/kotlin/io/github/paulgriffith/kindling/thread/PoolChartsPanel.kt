@@ -0,0 +1,174 @@
+package io.github.paulgriffith.kindling.thread
+
+import io.github.paulgriffith.kindling.core.Kindling
+import io.github.paulgriffith.kindling.thread.model.PoolStatistics
+import io.github.paulgriffith.kindling.thread.model.PoolStatistics.PoolSeries
+import io.github.paulgriffith.kindling.utils.FlatScrollPane
+import io.github.paulgriffith.kindling.utils.listCellRenderer
+import net.miginfocom.swing.MigLayout
+import org.jfree.chart.ChartFactory
+import org.jfree.chart.ChartPanel
+import org.jfree.chart.JFreeChart
+import org.jfree.chart.axis.NumberAxis
+import org.jfree.chart.plot.PlotOrientation
+import org.jfree.chart.ui.RectangleInsets
+import org.jfree.data.xy.DefaultTableXYDataset
+import org.jfree.data.xy.XYSeries
+import java.text.DecimalFormat
+import javax.swing.DefaultListModel
+import javax.swing.JLabel
+import javax.swing.JList
+import javax.swing.JPanel
+import javax.swing.JSplitPane
+import javax.swing.ListSelectionModel
+import javax.swing.UIManager
+
+/**
+ * Each pool's thread states, and the CPU used by the busiest pools, across the sequence of dumps; pool exhaustion and
+ * CPU hogs show up as shapes, rather than as rows to click through.
+ */
+class PoolChartsPanel : JPanel(MigLayout("ins 0, fill")) {
+    private val summary = JLabel()
+
+    private val poolModel = DefaultListModel<PoolEntry>()
+
+    private val poolList = JList(poolModel).apply {
+        selectionMode = ListSelectionModel.SINGLE_SELECTION
+        cellRenderer = listCellRenderer<PoolEntry> { _, value, _, _, _ ->
+            text = "${value.name} - peak ${value.series.peak}, ${PERCENT.format(value.series.totalCpu)} CPU"
+        }
+        addListSelectionListener { event ->
+            if (!event.valueIsAdjusting) {
+                updateStates()
+            }
+        }
+    }
+
+    private val stateDataset = DefaultTableXYDataset()
+    private val cpuDataset = DefaultTableXYDataset()
+
+    var statistics: PoolStatistics? = null
+        set(value) {
+            field = value
+            val selected = poolList.selectedValue?.name
+            poolModel.clear()
+            for ((pool, series) in value?.pools.orEmpty()) {
+                poolModel.addElement(PoolEntry(pool ?: NO_POOL, series))
+            }
+            val dumps = value?.loaded?.count { it } ?: 0
+            summary.text = if (dumps < 2) {
+                "Open at least two thread dumps to chart pools over time"
+            } else {
+                "${value!!.pools.size} pools across $dumps dumps"
+            }
+            val index = (0 until poolModel.size()).firstOrNull { poolModel[it].name == selected } ?: 0
+            if (poolModel.size() > 0) {
+                poolList.selectedIndex = index
+            }
+            updateStates()
+            updateCpu()
+        }
+
+    init {
+        add(summary, "wrap")
+        add(
+            JSplitPane(
+                JSplitPane.HORIZONTAL_SPLIT,
+                FlatScrollPane(poolList),
+                JPanel(MigLayout("ins 0, fill, flowy")).apply {
+                    add(ChartPanel(stackedChart("Threads", stateDataset)), "push, grow")
+                    add(ChartPanel(stackedChart("CPU %", cpuDataset)), "push, grow")
+                },
+            ).apply {
+                resizeWeight = 0.2
+            },
+            "push, grow",
+        )
+    }
+
+    private fun updateStates() {
+        stateDataset.removeAllSeries()
+        val statistics = statistics ?: return
+        val series = poolList.selectedValue?.series ?: return
+        for (state in PoolStatistics.STATES) {
+            val counts = series[state]
+            if (counts.all { it == 0 }) continue
+            stateDataset.addSeries(statistics.toXYSeries(state.name) { counts[it].toDouble() })
+        }
+    }
+
+    private fun updateCpu() {
+        cpuDataset.removeAllSeries()
+        val statistics = statistics ?: return
+        val pools = statistics.pools.entries.filter { (_, series) -> series.totalCpu > 0 }
+        for ((pool, series) in pools.take(CPU_POOLS)) {
+            cpuDataset.addSeries(statistics.toXYSeries(pool ?: NO_POOL) { series.cpu[it] })
+        }
+        val others = pools.drop(CPU_POOLS)
+        if (others.isNotEmpty()) {
+            cpuDataset.addSeries(
+                statistics.toXYSeries("Other") { dump -> others.sumOf { (_, series) -> series.cpu[dump] } },
+            )
+        }
+    }
+
+    private fun PoolStatistics.toXYSeries(key: String, value: (dump: Int) -> Double): XYSeries {
+        // stacked series have to share their x values, and can't have duplicates
+        return XYSeries(key, true, false).apply {
+            for (dump in 0 until dumpCount) {
+                if (loaded[dump]) {
+                    add((dump + 1).toDouble(), value(dump), false)
+                }
+            }
+        }
+    }
+
+    private class PoolEntry(val name: String, val series: PoolSeries)
+
+    companion object {
+        private const val NO_POOL = "(No Pool)"
+
+        /**
+         * The busiest pools get their own band on the CPU chart; the rest are lumped together.
+         */
+        private const val CPU_POOLS = 8
+
+        private val PERCENT = DecimalFormat("0.0'%'")
+
+        private fun stackedChart(rangeLabel: String, dataset: DefaultTableXYDataset): JFreeChart {
+            return ChartFactory.createStackedXYAreaChart(
+                /* title = */ null,
+                /* xAxisLabel = */ "Dump",
+                /* yAxisLabel = */ rangeLabel,
+                /* dataset = */ dataset,
+                /* orientation = */ PlotOrientation.VERTICAL,
+                /* legend = */ true,
+                /* tooltips = */ true,
+                /* urls = */ false,
+            ).apply {
+                xyPlot.apply {
+                    (domainAxis as NumberAxis).standardTickUnits = NumberAxis.createIntegerTickUnits()
+                    isDomainGridlinesVisible = false
+                    isOutlineVisible = false
+                }
+                padding = RectangleInsets(10.0, 10.0, 10.0, 10.0)
+                isBorderVisible = false
+
+                applyTheme(Kindling.theme)
+                Kindling.addThemeChangeListener { theme ->
+                    applyTheme(theme)
+                }
+            }
+        }
+
+        private fun JFreeChart.applyTheme(theme: Kindling.Theme) {
+            theme.apply(this)
+            xyPlot.domainAxis.labelPaint = UIManager.getColor("ColorChooser.foreground")
+            xyPlot.rangeAxis.labelPaint = UIManager.getColor("ColorChooser.foreground")
+            legend?.apply {
+                backgroundPaint = UIManager.getColor("Panel.background")
+                itemPaint = UIManager.getColor("ColorChooser.foreground")
+            }
+        }
+    }
+}
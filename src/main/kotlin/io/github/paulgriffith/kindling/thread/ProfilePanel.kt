@@ -0,0 +1,104 @@
+package io.github.paulgriffith.kindling.thread
+
+import io.github.paulgriffith.kindling.thread.model.ProfileReport
+import io.github.paulgriffith.kindling.thread.model.ProfileReport.MethodStats
+import io.github.paulgriffith.kindling.thread.model.ProfileReport.PackageStats
+import io.github.paulgriffith.kindling.thread.model.ProfileReport.PoolStats
+import io.github.paulgriffith.kindling.utils.ColumnList
+import io.github.paulgriffith.kindling.utils.FlatScrollPane
+import io.github.paulgriffith.kindling.utils.ReifiedJXTable
+import net.miginfocom.swing.MigLayout
+import org.jdesktop.swingx.renderer.DefaultTableRenderer
+import org.jdesktop.swingx.table.TableColumnExt
+import java.text.DecimalFormat
+import javax.swing.JLabel
+import javax.swing.JPanel
+import javax.swing.JSplitPane
+import javax.swing.table.AbstractTableModel
+import javax.swing.table.TableModel
+
+/**
+ * Hot methods, packages and pools across every (filtered) RUNNABLE thread in every visible dump.
+ */
+class ProfilePanel : JPanel(MigLayout("ins 0, fill")) {
+    private val summary = JLabel("Building profile...")
+
+    private val methods = ReifiedJXTable(ProfileTableModel(emptyList(), MethodColumns), MethodColumns)
+    private val packages = ReifiedJXTable(ProfileTableModel(emptyList(), PackageColumns), PackageColumns)
+    private val pools = ReifiedJXTable(ProfileTableModel(emptyList(), PoolColumns), PoolColumns)
+
+    var report: ProfileReport? = null
+        set(value) {
+            field = value
+            if (value != null) {
+                summary.text = "${value.samples} RUNNABLE samples across ${value.methods.size} methods"
+                methods.model = ProfileTableModel(value.methods, MethodColumns)
+                packages.model = ProfileTableModel(value.packages, PackageColumns)
+                pools.model = ProfileTableModel(value.pools, PoolColumns)
+            }
+        }
+
+    init {
+        add(summary, "wrap")
+        add(
+            JSplitPane(
+                JSplitPane.HORIZONTAL_SPLIT,
+                FlatScrollPane(methods),
+                JSplitPane(JSplitPane.VERTICAL_SPLIT, FlatScrollPane(packages), FlatScrollPane(pools)).apply {
+                    resizeWeight = 0.5
+                },
+            ).apply {
+                resizeWeight = 0.7
+            },
+            "push, grow",
+        )
+    }
+
+    private class ProfileTableModel<R>(
+        private val rows: List<R>,
+        private val columns: ColumnList<R>,
+    ) : AbstractTableModel() {
+        override fun getColumnName(column: Int): String = columns[column].header
+        override fun getRowCount(): Int = rows.size
+        override fun getColumnCount(): Int = columns.size
+        override fun getValueAt(row: Int, column: Int): Any? = columns[column].getValue(rows[row])
+        override fun getColumnClass(column: Int): Class<*> = columns[column].clazz
+    }
+
+    @Suppress("unused")
+    object MethodColumns : ColumnList<MethodStats>() {
+        val Method by column { it.method }
+        val Inclusive by column { it.inclusive }
+        val InclusivePercent by column(name = "Inclusive %", column = PERCENT) { it.inclusiveShare }
+        val Exclusive by column { it.exclusive }
+        val ExclusivePercent by column(name = "Exclusive %", column = PERCENT) { it.exclusiveShare }
+        val InclusiveCpu by column(name = "Inclusive CPU %", column = PERCENT) { it.inclusiveCpuShare }
+        val ExclusiveCpu by column(name = "Exclusive CPU %", column = PERCENT) { it.exclusiveCpuShare }
+    }
+
+    @Suppress("unused")
+    object PackageColumns : ColumnList<PackageStats>() {
+        val Package by column { it.name }
+        val Samples by column { it.exclusive }
+        val SamplePercent by column(name = "Samples %", column = PERCENT) { it.exclusiveShare }
+        val Cpu by column(name = "CPU %", column = PERCENT) { it.exclusiveCpuShare }
+    }
+
+    @Suppress("unused")
+    object PoolColumns : ColumnList<PoolStats>() {
+        val Pool by column { it.name ?: "(No Pool)" }
+        val Samples by column { it.samples }
+        val SamplePercent by column(name = "Samples %", column = PERCENT) { it.share }
+        val Cpu by column(name = "CPU %", column = PERCENT) { it.cpuShare }
+    }
+
+    companion object {
+        private val PERCENT_FORMAT = DecimalFormat("0.0%")
+
+        private val PERCENT: TableColumnExt.(model: TableModel) -> Unit = {
+            cellRenderer = DefaultTableRenderer { value ->
+                (value as? Double)?.let(PERCENT_FORMAT::format).orEmpty()
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.paulgriffith.kindling.thread
+
+import io.github.paulgriffith.kindling.thread.model.StuckThreads
+import io.github.paulgriffith.kindling.thread.model.StuckThreads.Finding
+import io.github.paulgriffith.kindling.thread.model.ThreadLifespan
+import io.github.paulgriffith.kindling.utils.ColumnList
+import io.github.paulgriffith.kindling.utils.FlatScrollPane
+import io.github.paulgriffith.kindling.utils.ReifiedJXTable
+import io.github.paulgriffith.kindling.utils.add
+import io.github.paulgriffith.kindling.utils.getAll
+import io.github.paulgriffith.kindling.utils.selectedRowIndices
+import net.miginfocom.swing.MigLayout
+import javax.swing.JLabel
+import javax.swing.JPanel
+import javax.swing.JSpinner
+import javax.swing.ListSelectionModel
+import javax.swing.SpinnerNumberModel
+import javax.swing.event.EventListenerList
+import javax.swing.table.AbstractTableModel
+
+/**
+ * Threads that look stuck (the same RUNNABLE or BLOCKED stack in several consecutive dumps) or that look like they're
+ * recursing (a deeper stack in every dump). Selecting one selects it in the thread table.
+ */
+class StuckThreadsPanel : JPanel(MigLayout("ins 0, fill")) {
+    private val listeners = EventListenerList()
+
+    private val minimumDumps = JSpinner(SpinnerNumberModel(3, MINIMUM_DUMPS, 1000, 1))
+    private val summary = JLabel()
+
+    private val table = ReifiedJXTable(FindingModel(emptyList()), FindingColumns).apply {
+        selectionMode = ListSelectionModel.SINGLE_SELECTION
+        selectionModel.addListSelectionListener { event ->
+            if (!event.valueIsAdjusting) {
+                val row = selectedRowIndices().firstOrNull() ?: return@addListSelectionListener
+                fireThreadSelectedEvent(model.findings[row].thread.id)
+            }
+        }
+    }
+
+    /**
+     * Every candidate finding, from [find]; only narrowed down to the chosen minimum here, so that's all the EDT does.
+     */
+    var findings: Findings = Findings(0, emptyList())
+        set(value) {
+            field = value
+            update()
+        }
+
+    /**
+     * Every thread stuck or growing for at least [MINIMUM_DUMPS] consecutive dumps, out of [dumpCount] dumps.
+     */
+    class Findings(val dumpCount: Int, val candidates: List<Finding>)
+
+    private fun update() {
+        val minimum = minimumDumps.value as Int
+        val findings = findings.candidates.filter { it.stuckFor >= minimum || it.growingFor >= minimum }
+        val stuck = findings.count { it.stuckFor >= minimum }
+        val growing = findings.count { it.growingFor >= minimum }
+        summary.text = if (this.findings.dumpCount < 2) {
+            "Open at least two consecutive thread dumps to look for stuck threads"
+        } else {
+            "$stuck stuck threads, $growing threads with growing stacks"
+        }
+        table.model = FindingModel(findings)
+    }
+
+    fun addThreadSelectedListener(listener: ThreadSelectedEventListener) {
+        listeners.add(listener)
+    }
+
+    private fun fireThreadSelectedEvent(threadId: Int) {
+        for (listener in listeners.getAll<ThreadSelectedEventListener>()) {
+            listener.onThreadSelected(threadId)
+        }
+    }
+
+    init {
+        minimumDumps.addChangeListener { update() }
+
+        add(JLabel("Minimum consecutive dumps:"), "split 3")
+        add(minimumDumps)
+        add(summary, "gapleft 20, wrap")
+        add(FlatScrollPane(table), "push, grow")
+    }
+
+    private class FindingModel(val findings: List<Finding>) : AbstractTableModel() {
+        override fun getColumnName(column: Int): String = FindingColumns[column].header
+        override fun getRowCount(): Int = findings.size
+        override fun getColumnCount(): Int = FindingColumns.size
+        override fun getValueAt(row: Int, column: Int): Any? = FindingColumns[column].getValue(findings[row])
+        override fun getColumnClass(column: Int): Class<*> = FindingColumns[column].clazz
+    }
+
+    @Suppress("unused")
+    object FindingColumns : ColumnList<Finding>() {
+        val Id by column { it.thread.id }
+        val Name by column { it.thread.name }
+        val State by column { it.thread.state }
+        val Depth by column { it.thread.stacktrace.size }
+        val StuckFor by column(name = "Stuck For") { it.stuckFor }
+        val GrowingFor by column(name = "Growing For") { it.growingFor }
+    }
+
+    companion object {
+        private const val MINIMUM_DUMPS = 2
+
+        /**
+         * Looks through every one of [lifespans]; slow, so call it off the EDT and hand the result to [findings].
+         */
+        fun find(lifespans: List<ThreadLifespan>): Findings {
+            return Findings(
+                dumpCount = lifespans.maxOfOrNull { it.size } ?: 0,
+                candidates = StuckThreads.find(lifespans, MINIMUM_DUMPS),
+            )
+        }
+    }
+}
@@ -45,18 +45,45 @@ class ThreadComparisonPane(
         updateData()
     }
 
-    private val threadContainers: List<ThreadContainer> = List(totalThreadDumps) {
-        ThreadContainer(version).apply {
-            blockerButton.addActionListener {
-                val blocker = blockerButton.blocker
-                if (blocker != null) {
-                    fireBlockerSelectedEvent(blocker)
+    private val threadContainers = MutableList(totalThreadDumps) { createContainer() }
+
+    private val header = HeaderPanel()
+
+    private val containerPanel = JPanel(MigLayout("fill, hidemode 3, ins 0")).apply {
+        for (container in threadContainers) {
+            add(container, "push, grow, sizegroup")
+        }
+    }
+
+    /**
+     * The number of dumps being compared; dumps can only be added, e.g. as a watched folder fills.
+     */
+    var totalThreadDumps: Int = totalThreadDumps
+        set(value) {
+            require(value >= field)
+            val template = threadContainers.first()
+            repeat(value - field) {
+                val container = createContainer().apply {
+                    isShowNulls = template.isShowNulls
+                    isShowEmptyValues = template.isShowEmptyValues
+                    isHyperlinksEnabled = template.isHyperlinksEnabled
                 }
+                threadContainers += container
+                containerPanel.add(container, "push, grow, sizegroup")
             }
+            field = value
+            containerPanel.revalidate()
+            updateData()
         }
-    }
 
-    private val header = HeaderPanel()
+    private fun createContainer() = ThreadContainer(version).apply {
+        blockerButton.addActionListener {
+            val blocker = blockerButton.blocker
+            if (blocker != null) {
+                fireBlockerSelectedEvent(blocker)
+            }
+        }
+    }
 
     init {
         header.addPropertyChangeListener("showNullThreads") { event ->
@@ -77,13 +104,7 @@ class ThreadComparisonPane(
 
         add(header, "growx, spanx")
         add(
-            FlatScrollPane(
-                JPanel(MigLayout("fill, hidemode 3, ins 0")).apply {
-                    for (container in threadContainers) {
-                        add(container, "push, grow, sizegroup")
-                    }
-                },
-            ),
+            FlatScrollPane(containerPanel),
             "push, grow",
         )
     }
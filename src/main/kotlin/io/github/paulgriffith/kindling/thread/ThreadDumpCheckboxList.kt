@@ -1,5 +1,6 @@
 package io.github.paulgriffith.kindling.thread
 
+import com.formdev.flatlaf.extras.FlatSVGIcon
 import com.jidesoft.swing.CheckBoxList
 import io.github.paulgriffith.kindling.utils.NoSelectionModel
 import io.github.paulgriffith.kindling.utils.listCellRenderer
@@ -9,7 +10,7 @@ import javax.swing.JList
 import javax.swing.ListModel
 import kotlin.io.path.name
 
-class ThreadDumpListModel(private val values: List<Path>) : AbstractListModel<Any>() {
+class ThreadDumpListModel(val values: List<Path>) : AbstractListModel<Any>() {
     override fun getSize(): Int = values.size + 1
     override fun getElementAt(index: Int): Any? = when (index) {
         0 -> CheckBoxList.ALL_ENTRY
@@ -17,7 +18,15 @@ class ThreadDumpListModel(private val values: List<Path>) : AbstractListModel<An
     }
 }
 
-class ThreadDumpCheckboxList(data: List<Path>) : CheckBoxList(ThreadDumpListModel(data)) {
+/**
+ * @param errors files that couldn't be parsed; they're still listed, with the error as their tooltip.
+ */
+class ThreadDumpCheckboxList(
+    data: List<Path>,
+    errors: Map<Path, Throwable> = emptyMap(),
+) : CheckBoxList(ThreadDumpListModel(data)) {
+    private val failures = errors.toMutableMap()
+
     init {
         layoutOrientation = JList.HORIZONTAL_WRAP
         visibleRowCount = 0
@@ -29,14 +38,28 @@ class ThreadDumpCheckboxList(data: List<Path>) : CheckBoxList(ThreadDumpListMode
                 0 -> "All"
                 else -> index.toString()
             }
-            toolTipText = when (value) {
-                is Path -> value.name
-                else -> null
+            val error = failures[value]
+            icon = if (error != null) ERROR_ICON else null
+            toolTipText = when {
+                value !is Path -> null
+                error != null -> "${value.name}: ${error.message}"
+                else -> value.name
             }
         }
         selectAll()
     }
 
+    /**
+     * Appends (and checks) another dump, e.g. one that's just arrived in a watched folder.
+     */
+    fun add(path: Path, error: Throwable? = null) {
+        if (error != null) {
+            failures[path] = error
+        }
+        model = ThreadDumpListModel(model.values + path)
+        addCheckBoxListSelectedValues(arrayOf(path))
+    }
+
     override fun getModel() = super.getModel() as ThreadDumpListModel
 
     override fun setModel(model: ListModel<*>) {
@@ -47,4 +70,8 @@ class ThreadDumpCheckboxList(data: List<Path>) : CheckBoxList(ThreadDumpListMode
         addCheckBoxListSelectedValues(selection)
         checkBoxListSelectionModel.valueIsAdjusting = false
     }
+
+    companion object {
+        private val ERROR_ICON = FlatSVGIcon("icons/bx-error.svg").derive(12, 12)
+    }
 }
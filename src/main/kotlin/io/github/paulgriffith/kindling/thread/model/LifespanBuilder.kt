@@ -0,0 +1,67 @@
+package io.github.paulgriffith.kindling.thread.model
+
+/**
+ * Lines up the threads of a series of dumps by id, one [ThreadLifespan] per thread, in order of first appearance.
+ * Dumps are appended one at a time, so a new dump only costs a pass over its own threads rather than a rebuild of
+ * every lifespan. Each list returned by [build] is a fixed snapshot; later appends never change it, so it's safe to
+ * hand to a background thread.
+ */
+class LifespanBuilder() {
+    private val lifespans = LinkedHashMap<Int, Lifespan>()
+
+    var size = 0
+        private set
+
+    constructor(threadDumps: List<ThreadDump?>) : this() {
+        threadDumps.forEach(::append)
+    }
+
+    /**
+     * Adds [threadDump] as the next dump in the series; null for a dump that's hidden or failed to load.
+     */
+    fun append(threadDump: ThreadDump?) {
+        val threads = threadDump?.threads.orEmpty()
+        // check everything first, so a mismatched dump doesn't leave the lifespans half-updated
+        for (thread in threads) {
+            val existing = lifespans[thread.id]
+            require(existing == null || existing.name == thread.name) {
+                """Thread dumps must be from the same gateway and runtime instance.
+                   Thread dump number ${size + 1} caused this issue.
+                   ID ${thread.id} differs.
+                """.trimMargin()
+            }
+        }
+        for (thread in threads) {
+            lifespans.getOrPut(thread.id) { Lifespan(thread.name) }[size] = thread
+        }
+        size += 1
+    }
+
+    fun build(): List<ThreadLifespan> = lifespans.values.map { it.snapshot(size) }
+
+    private class Lifespan(val name: String) {
+        private var threads = arrayOfNulls<Thread>(4)
+
+        operator fun set(index: Int, thread: Thread) {
+            if (index >= threads.size) {
+                threads = threads.copyOf(maxOf(index + 1, threads.size * 2))
+            }
+            threads[index] = thread
+        }
+
+        /**
+         * A view of the first [dumps] dumps. Those slots are never written again, and growing allocates a new array,
+         * so the view can't change underneath whoever holds it.
+         */
+        fun snapshot(dumps: Int): ThreadLifespan {
+            val array = threads
+            return object : AbstractList<Thread?>() {
+                override val size: Int = dumps
+                override fun get(index: Int): Thread? {
+                    if (index !in 0 until size) throw IndexOutOfBoundsException("Index $index, size $size")
+                    return array.getOrNull(index)
+                }
+            }
+        }
+    }
+}
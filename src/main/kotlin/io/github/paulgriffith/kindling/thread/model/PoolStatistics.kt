@@ -0,0 +1,111 @@
+package io.github.paulgriffith.kindling.thread.model
+
+import java.lang.Thread.State as ThreadState
+
+/**
+ * How many threads each pool had in each state, and how much CPU they used between them, in every one of a series of
+ * dumps. Built in a single pass over every thread, straight into plain arrays indexed by dump.
+ */
+class PoolStatistics private constructor(
+    /**
+     * For each dump (by index), whether it loaded; dumps that didn't have no values, rather than zeroes.
+     */
+    val loaded: BooleanArray,
+    /**
+     * Every pool, busiest (by total CPU, then peak thread count) first. Threads outside any pool are under `null`.
+     */
+    val pools: Map<String?, PoolSeries>,
+) {
+    val dumpCount: Int
+        get() = loaded.size
+
+    class PoolSeries internal constructor(
+        /**
+         * Thread counts, by [ThreadState.ordinal] and then by dump.
+         */
+        val counts: Array<IntArray>,
+        /**
+         * Summed [Thread.cpuUsage], by dump.
+         */
+        val cpu: DoubleArray,
+    ) {
+        val totalCpu: Double
+            get() = cpu.sum()
+
+        /**
+         * The most threads this pool had in any one dump.
+         */
+        val peak: Int
+            get() = cpu.indices.maxOfOrNull { dump -> counts.sumOf { it[dump] } } ?: 0
+
+        operator fun get(state: ThreadState): IntArray = counts[state.ordinal]
+    }
+
+    /**
+     * Accumulates statistics one dump at a time, so a growing series (e.g. a watched folder) only ever reads each dump
+     * once. Not thread safe.
+     */
+    class Builder {
+        private var dumpCount = 0
+        private var loaded = BooleanArray(INITIAL_CAPACITY)
+        private val pools = HashMap<String?, Accumulator>()
+
+        private val capacity: Int
+            get() = loaded.size
+
+        fun append(threadDump: ThreadDump?) {
+            if (dumpCount == capacity) {
+                loaded = loaded.copyOf(capacity * 2)
+                pools.values.forEach { it.grow(capacity) }
+            }
+            val dump = dumpCount++
+            loaded[dump] = threadDump != null
+            for (thread in threadDump?.threads.orEmpty()) {
+                val pool = pools.getOrPut(thread.pool) { Accumulator(capacity) }
+                pool.counts[thread.state.ordinal][dump] += 1
+                pool.cpu[dump] += thread.cpuUsage ?: 0.0
+            }
+        }
+
+        /**
+         * A snapshot of every dump appended so far.
+         */
+        fun build(): PoolStatistics {
+            val series = pools.mapValues { (_, pool) ->
+                PoolSeries(
+                    counts = Array(STATES.size) { state -> pool.counts[state].copyOf(dumpCount) },
+                    cpu = pool.cpu.copyOf(dumpCount),
+                )
+            }
+            val sorted = series.entries.sortedWith(
+                compareByDescending<Map.Entry<String?, PoolSeries>> { it.value.totalCpu }.thenByDescending { it.value.peak },
+            )
+            return PoolStatistics(
+                loaded = loaded.copyOf(dumpCount),
+                pools = sorted.associateTo(LinkedHashMap()) { it.key to it.value },
+            )
+        }
+
+        private class Accumulator(capacity: Int) {
+            var counts: Array<IntArray> = Array(STATES.size) { IntArray(capacity) }
+            var cpu = DoubleArray(capacity)
+
+            fun grow(capacity: Int) {
+                counts = Array(STATES.size) { state -> counts[state].copyOf(capacity) }
+                cpu = cpu.copyOf(capacity)
+            }
+        }
+    }
+
+    companion object {
+        val STATES: Array<ThreadState> = ThreadState.values()
+
+        private const val INITIAL_CAPACITY = 16
+
+        fun from(threadDumps: List<ThreadDump?>): PoolStatistics {
+            return Builder().apply {
+                threadDumps.forEach(::append)
+            }.build()
+        }
+    }
+}
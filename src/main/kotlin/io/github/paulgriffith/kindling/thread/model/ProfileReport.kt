@@ -0,0 +1,155 @@
+package io.github.paulgriffith.kindling.thread.model
+
+import java.lang.Thread.State.RUNNABLE
+
+/**
+ * A "poor man's profiler" report: each RUNNABLE thread in each dump is treated as one sample of where the gateway was
+ * spending its time. Methods are credited inclusively (anywhere on the stack, but only once per sample, however
+ * deeply they recurse) and exclusively (on top of the stack). Everything is also weighted by [Thread.cpuUsage], so a
+ * busy thread counts for more than one that merely happens to be RUNNABLE.
+ */
+class ProfileReport private constructor(
+    val samples: Int,
+    val totalCpu: Double,
+    val methods: List<MethodStats>,
+    val packages: List<PackageStats>,
+    val pools: List<PoolStats>,
+) {
+    /**
+     * Shares are fractions of all samples, or of all CPU usage across them.
+     */
+    data class MethodStats(
+        val method: String,
+        val inclusive: Int,
+        val exclusive: Int,
+        val inclusiveShare: Double,
+        val exclusiveShare: Double,
+        val inclusiveCpuShare: Double,
+        val exclusiveCpuShare: Double,
+    )
+
+    data class PackageStats(
+        val name: String,
+        val exclusive: Int,
+        val exclusiveShare: Double,
+        val exclusiveCpuShare: Double,
+    )
+
+    data class PoolStats(
+        val name: String?,
+        val samples: Int,
+        val share: Double,
+        val cpuShare: Double,
+    )
+
+    companion object {
+        /**
+         * Builds a report over every thread in [trie] that [include] accepts.
+         */
+        fun from(trie: StackTrie, include: (dumpIndex: Int, thread: Thread) -> Boolean): ProfileReport {
+            fun isSample(dumpIndex: Int, thread: Thread) = thread.state == RUNNABLE && include(dumpIndex, thread)
+
+            val samples = trie.weigh { dumpIndex, thread -> if (isSample(dumpIndex, thread)) 1.0 else 0.0 }
+            val cpu = trie.weigh { dumpIndex, thread ->
+                if (isSample(dumpIndex, thread)) thread.cpuUsage ?: 0.0 else 0.0
+            }
+
+            class Accumulator {
+                var inclusive = 0.0
+                var exclusive = 0.0
+                var inclusiveCpu = 0.0
+                var exclusiveCpu = 0.0
+            }
+
+            val methods = HashMap<String, Accumulator>()
+            // how many times each method is already on the stack above the current node, so recursion isn't recounted
+            val active = HashMap<String, Int>()
+
+            // depth first; a null node marks leaving the node below it on the stack
+            val pending = ArrayDeque<StackTrie.Node?>()
+            pending.addAll(trie.root.children)
+            val entered = ArrayDeque<String>()
+            while (pending.isNotEmpty()) {
+                val node = pending.removeLast()
+                if (node == null) {
+                    val method = entered.removeLast()
+                    active.compute(method) { _, count -> if (count == 1) null else count!! - 1 }
+                    continue
+                }
+                if (samples.total(node) == 0.0) continue
+
+                val method = node.method
+                val stats = methods.getOrPut(method, ::Accumulator)
+                if (method !in active) {
+                    stats.inclusive += samples.total(node)
+                    stats.inclusiveCpu += cpu.total(node)
+                }
+                stats.exclusive += samples.self(node)
+                stats.exclusiveCpu += cpu.self(node)
+
+                active.merge(method, 1, Int::plus)
+                entered.addLast(method)
+                pending.addLast(null)
+                pending.addAll(node.children)
+            }
+
+            val totalSamples = samples.total(trie.root)
+            val totalCpu = cpu.total(trie.root)
+            fun sampleShare(value: Double) = if (totalSamples == 0.0) 0.0 else value / totalSamples
+            fun cpuShare(value: Double) = if (totalCpu == 0.0) 0.0 else value / totalCpu
+
+            val methodStats = methods.map { (method, stats) ->
+                MethodStats(
+                    method = method,
+                    inclusive = stats.inclusive.toInt(),
+                    exclusive = stats.exclusive.toInt(),
+                    inclusiveShare = sampleShare(stats.inclusive),
+                    exclusiveShare = sampleShare(stats.exclusive),
+                    inclusiveCpuShare = cpuShare(stats.inclusiveCpu),
+                    exclusiveCpuShare = cpuShare(stats.exclusiveCpu),
+                )
+            }.sortedByDescending { it.inclusive }
+
+            val packageStats = methods.entries
+                .groupBy { (method, _) -> method.substringBeforeLast('.').substringBeforeLast('.', "(default)") }
+                .map { (name, entries) ->
+                    val exclusive = entries.sumOf { (_, stats) -> stats.exclusive }
+                    PackageStats(
+                        name = name,
+                        exclusive = exclusive.toInt(),
+                        exclusiveShare = sampleShare(exclusive),
+                        exclusiveCpuShare = cpuShare(entries.sumOf { (_, stats) -> stats.exclusiveCpu }),
+                    )
+                }
+                .filter { it.exclusive > 0 }
+                .sortedByDescending { it.exclusive }
+
+            val pools = HashMap<String?, Accumulator>()
+            trie.threadDumps.forEachIndexed { dumpIndex, threadDump ->
+                for (thread in threadDump?.threads.orEmpty()) {
+                    if (isSample(dumpIndex, thread)) {
+                        val stats = pools.getOrPut(thread.pool, ::Accumulator)
+                        stats.exclusive += 1
+                        stats.exclusiveCpu += thread.cpuUsage ?: 0.0
+                    }
+                }
+            }
+            val poolStats = pools.map { (name, stats) ->
+                PoolStats(
+                    name = name,
+                    samples = stats.exclusive.toInt(),
+                    share = sampleShare(stats.exclusive),
+                    cpuShare = cpuShare(stats.exclusiveCpu),
+                )
+            }.sortedByDescending { it.samples }
+
+            return ProfileReport(
+                samples = totalSamples.toInt(),
+                totalCpu = totalCpu,
+                methods = methodStats,
+                packages = packageStats,
+                pools = poolStats,
+            )
+        }
+    }
+}
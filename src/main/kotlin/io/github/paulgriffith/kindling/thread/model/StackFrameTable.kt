@@ -0,0 +1,121 @@
+package io.github.paulgriffith.kindling.thread.model
+
+/**
+ * A dictionary of stack frames shared by every thread dump opened together. Most frames (`Object.wait`, thread pool
+ * and Jetty internals) appear in hundreds of threads in every dump; once interned, each distinct frame is stored once
+ * and each stack is just a sequence of frame ids. Identical stacks (e.g. every idle worker in a pool) are further
+ * collapsed into a single [InternedStacktrace] instance.
+ *
+ * Interning is thread safe, so dumps can be interned as they're parsed in parallel, and frames can be read (without
+ * locking) while more are being added.
+ */
+class StackFrameTable {
+    private val ids = HashMap<String, Int>()
+
+    /**
+     * Replaced by a larger copy when full, and reassigned after every addition, so readers always see every frame they
+     * could have been given an id for.
+     */
+    @Volatile
+    private var frames = arrayOfNulls<String>(INITIAL_CAPACITY)
+    private var size = 0
+    private val stacks = HashMap<StackKey, InternedStacktrace>()
+    private val derived = HashMap<Any, ArrayList<Any?>>()
+
+    val frameCount: Int
+        get() = synchronized(this) { size }
+
+    val stackCount: Int
+        get() = synchronized(this) { stacks.size }
+
+    operator fun get(frameId: Int): String = frames[frameId]!!
+
+    /**
+     * Returns a copy of [threadDump] whose stacks all read through this table.
+     */
+    fun intern(threadDump: ThreadDump): ThreadDump = synchronized(this) {
+        threadDump.copy(
+            threads = threadDump.threads.map { thread ->
+                thread.copy(stacktrace = intern(thread.stacktrace))
+            },
+        )
+    }
+
+    fun intern(stacktrace: Stacktrace): InternedStacktrace {
+        // already interned stacks never need the lock, so (e.g.) building stack tries in parallel doesn't contend on it
+        if (stacktrace is InternedStacktrace && stacktrace.table === this) {
+            return stacktrace
+        }
+        return synchronized(this) {
+            stackOf(IntArray(stacktrace.size) { i -> frameId(stacktrace[i]) })
+        }
+    }
+
+    internal fun frameId(frame: String): Int = synchronized(this) {
+        ids.getOrPut(frame) {
+            val current = frames
+            val next = if (size < current.size) current else current.copyOf(current.size * 2)
+            next[size] = frame
+            frames = next
+            size++
+        }
+    }
+
+    /**
+     * The stack made of [frameIds], which must all have come from [frameId].
+     */
+    internal fun stackOf(frameIds: IntArray): InternedStacktrace = synchronized(this) {
+        stacks.getOrPut(StackKey(frameIds)) { InternedStacktrace(this, frameIds) }
+    }
+
+    /**
+     * Something worked out from a single frame (e.g. its linkified line), computed only the first time it's asked for
+     * with each [key], however many stacks (and dumps) the frame appears in.
+     */
+    fun <T : Any> derive(key: Any, frameId: Int, compute: (frame: String) -> T): T = synchronized(this) {
+        val values = derived.getOrPut(key) { ArrayList() }
+        while (values.size <= frameId) {
+            values.add(null)
+        }
+        @Suppress("UNCHECKED_CAST")
+        values[frameId] as T? ?: compute(this[frameId]).also { values[frameId] = it }
+    }
+
+    private class StackKey(private val frameIds: IntArray) {
+        private val hash = frameIds.contentHashCode()
+
+        override fun hashCode(): Int = hash
+        override fun equals(other: Any?): Boolean = other is StackKey && frameIds.contentEquals(other.frameIds)
+    }
+
+    companion object {
+        private const val INITIAL_CAPACITY = 1024
+    }
+}
+
+/**
+ * A [Stacktrace] stored as frame ids into a [StackFrameTable]. Reads exactly like any other list of frames.
+ */
+class InternedStacktrace internal constructor(
+    internal val table: StackFrameTable,
+    private val frameIds: IntArray,
+) : AbstractList<String>() {
+    private val hash = frameIds.fold(1) { acc, id -> 31 * acc + table[id].hashCode() }
+
+    override val size: Int
+        get() = frameIds.size
+
+    override fun get(index: Int): String = table[frameIds[index]]
+
+    fun frameIdAt(index: Int): Int = frameIds[index]
+
+    override fun hashCode(): Int = hash
+
+    override fun equals(other: Any?): Boolean {
+        return if (other is InternedStacktrace && other.table === table) {
+            other === this || other.frameIds.contentEquals(frameIds)
+        } else {
+            super.equals(other)
+        }
+    }
+}
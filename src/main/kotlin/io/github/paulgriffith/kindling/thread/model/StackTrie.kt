@@ -0,0 +1,218 @@
+package io.github.paulgriffith.kindling.thread.model
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+
+/**
+ * Every stack of every thread in a set of dumps, merged into a single call tree rooted at the outermost frame. The
+ * tree's shape is built once, by frame id, and only ever grows as dumps are [merged][Builder.merge] into it; what each
+ * thread contributes is decided afterwards by [weigh], so a different filter or weighting only costs a pass over the
+ * threads and nodes, never re-reading any frames.
+ *
+ * A [StackTrie] is an immutable snapshot of a [Builder]; every snapshot of the same builder shares its nodes.
+ */
+class StackTrie private constructor(
+    val threadDumps: List<ThreadDump?>,
+    /**
+     * Every node, by [Node.id]. Parents always come before their children. Shared with the builder, which only ever
+     * writes past [size].
+     */
+    private val nodes: Array<Node?>,
+    val size: Int,
+    /**
+     * For every thread in every dump, the node its stack ends at.
+     */
+    private val terminals: List<Array<Node>>,
+) {
+    val root: Node = nodes[0]!!
+
+    class Node internal constructor(
+        val id: Int,
+        /**
+         * The [StackFrameTable] id of [frame]; -1 for the [root].
+         */
+        val frameId: Int,
+        /**
+         * The frame this node represents; null only for the [root].
+         */
+        val frame: String?,
+        val parent: Node?,
+    ) {
+        val depth: Int = if (parent == null) 0 else parent.depth + 1
+
+        /**
+         * The method this frame is in, without the module prefix or source location that Java adds:
+         * `java.base@11/a.B.c(B.java:1)` is just `a.B.c`.
+         */
+        val method: String
+            get() {
+                val method = frame?.removePrefix("at ")?.substringBefore('(') ?: return toString()
+                val slash = method.indexOf('/')
+                // hidden classes (lambdas) have a slash in their name too, but never a module prefix with a `$`
+                return if (slash >= 0 && '$' !in method.substring(0, slash)) {
+                    method.substring(slash + 1).trimStart('/')
+                } else {
+                    method
+                }
+            }
+
+        /**
+         * Children are only ever added, after the ones already here. They can include nodes added after an older
+         * snapshot was taken, which that snapshot's [Weights] always weigh as 0.
+         */
+        @Volatile
+        var children: List<Node> = emptyList()
+            internal set
+
+        override fun toString(): String = frame ?: "(All Threads)"
+    }
+
+    /**
+     * Weighs each thread in each dump by [weight]; a thread weighing 0 is left out entirely.
+     */
+    fun weigh(weight: (dumpIndex: Int, thread: Thread) -> Double): Weights {
+        val self = DoubleArray(size)
+        threadDumps.forEachIndexed { dumpIndex, threadDump ->
+            val dumpTerminals = terminals[dumpIndex]
+            threadDump?.threads?.forEachIndexed { i, thread ->
+                val w = weight(dumpIndex, thread)
+                if (w != 0.0) {
+                    self[dumpTerminals[i].id] += w
+                }
+            }
+        }
+        val total = self.copyOf()
+        for (id in size - 1 downTo 1) {
+            total[nodes[id]!!.parent!!.id] += total[id]
+        }
+        return Weights(self, total)
+    }
+
+    inner class Weights internal constructor(
+        private val self: DoubleArray,
+        private val total: DoubleArray,
+    ) {
+        val trie: StackTrie
+            get() = this@StackTrie
+
+        /**
+         * The weight of threads whose stack ends exactly at [node], i.e. with [Node.frame] on top.
+         */
+        fun self(node: Node): Double = self.getOrElse(node.id) { 0.0 }
+
+        /**
+         * The weight of every thread whose stack passes through [node].
+         */
+        fun total(node: Node): Double = total.getOrElse(node.id) { 0.0 }
+    }
+
+    /**
+     * One dump's stacks as a tree of their own, keyed by frame id, waiting to be [merged][Builder.merge]. Building one is
+     * most of the work of adding a dump, and only reads the dump, so it can be done in parallel and off the EDT.
+     */
+    class Partial internal constructor(
+        internal val frames: StackFrameTable,
+        internal val threadDump: ThreadDump?,
+        internal val root: PartialNode,
+        internal val terminals: List<PartialNode>,
+    )
+
+    internal class PartialNode {
+        val children = LinkedHashMap<Int, PartialNode>()
+        var merged: Node? = null
+
+        fun child(frameId: Int): PartialNode = children.getOrPut(frameId, ::PartialNode)
+    }
+
+    /**
+     * The growing tree behind a series of snapshots. Merging a dump only visits the nodes its own stacks pass through,
+     * so a dump arriving in a watched folder doesn't cost anything for the dumps before it. Not thread safe, but
+     * snapshots can be read while it's being merged into.
+     */
+    class Builder(private val frames: StackFrameTable) {
+        private var nodes = arrayOfNulls<Node>(INITIAL_CAPACITY).apply {
+            this[0] = Node(0, -1, null, null)
+        }
+        private var size = 1
+
+        /**
+         * Every node but the root, by its parent's id and its frame id.
+         */
+        private val children = HashMap<Long, Node>()
+        private val threadDumps = mutableListOf<ThreadDump?>()
+        private val terminals = mutableListOf<Array<Node>>()
+
+        /**
+         * Adds [partial]'s dump after every dump merged so far.
+         */
+        fun merge(partial: Partial) {
+            require(partial.frames === frames) { "Partial trie was built from a different frame table" }
+            val pending = ArrayDeque<Pair<PartialNode, Node>>()
+            pending.add(partial.root to nodes[0]!!)
+            while (pending.isNotEmpty()) {
+                val (source, target) = pending.removeFirst()
+                source.merged = target
+                for ((frameId, child) in source.children) {
+                    pending.add(child to child(target, frameId))
+                }
+            }
+            threadDumps += partial.threadDump
+            terminals += Array(partial.terminals.size) { i -> partial.terminals[i].merged!! }
+        }
+
+        /**
+         * A snapshot of every dump merged so far.
+         */
+        fun build(): StackTrie = StackTrie(threadDumps.toList(), nodes, size, terminals.toList())
+
+        private fun child(parent: Node, frameId: Int): Node {
+            return children.getOrPut(parent.id.toLong() shl Int.SIZE_BITS or frameId.toLong()) {
+                if (size == nodes.size) {
+                    nodes = nodes.copyOf(size * 2)
+                }
+                // numbered as they're added, so every parent is still numbered before its children
+                Node(size, frameId, frames[frameId], parent).also { node ->
+                    nodes[size++] = node
+                    parent.children = parent.children + node
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val INITIAL_CAPACITY = 1024
+
+        /**
+         * Builds [threadDump]'s stacks (interned into [frames], if they aren't already) into a tree of their own. Thread
+         * safe.
+         */
+        fun partial(threadDump: ThreadDump?, frames: StackFrameTable): Partial {
+            val root = PartialNode()
+            val threadTerminals = threadDump?.threads.orEmpty().map { thread ->
+                val stack = frames.intern(thread.stacktrace)
+                // stacks are innermost frame first; the tree starts at the outermost
+                (stack.lastIndex downTo 0).fold(root) { node, i -> node.child(stack.frameIdAt(i)) }
+            }
+            return Partial(frames, threadDump, root, threadTerminals)
+        }
+
+        /**
+         * Builds a tree of [threadDumps], one dump per coroutine, and merges them in order.
+         */
+        suspend fun builder(threadDumps: List<ThreadDump?>, frames: StackFrameTable): Builder = coroutineScope {
+            val partials = threadDumps.map { threadDump ->
+                async(Dispatchers.Default) { partial(threadDump, frames) }
+            }.awaitAll()
+            Builder(frames).apply {
+                partials.forEach(::merge)
+            }
+        }
+
+        suspend fun build(
+            threadDumps: List<ThreadDump?>,
+            frames: StackFrameTable = StackFrameTable(),
+        ): StackTrie = builder(threadDumps, frames).build()
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.paulgriffith.kindling.thread.model
+
+import java.lang.Thread.State.BLOCKED
+import java.lang.Thread.State.RUNNABLE
+
+/**
+ * Finds threads that don't seem to be making progress across a series of dumps: those that stay RUNNABLE or BLOCKED
+ * with exactly the same stack in consecutive dumps, and those whose stack gets deeper every time (e.g. runaway
+ * recursion). Stacks are compared by hash first; interned stacks cache theirs, so this never walks the frames of two
+ * stacks unless they're (almost certainly) the same.
+ */
+object StuckThreads {
+    private val STUCK_STATES = setOf(RUNNABLE, BLOCKED)
+
+    data class Finding(
+        val thread: Thread,
+        /**
+         * The most consecutive dumps this thread was in the same RUNNABLE or BLOCKED state with the same stack.
+         */
+        val stuckFor: Int,
+        /**
+         * The most consecutive dumps this thread's stack got deeper in each time.
+         */
+        val growingFor: Int,
+    )
+
+    /**
+     * The most consecutive dumps in [lifespan] that the thread was RUNNABLE or BLOCKED with an unchanged stack.
+     */
+    fun stuckFor(lifespan: ThreadLifespan): Int {
+        var longest = 0
+        var run = 0
+        var previous: Thread? = null
+        for (thread in lifespan) {
+            run = when {
+                thread == null || thread.state !in STUCK_STATES -> 0
+                previous != null && thread.state == previous.state && thread.stacktrace.isSameAs(previous.stacktrace) -> run + 1
+                else -> 1
+            }
+            longest = maxOf(longest, run)
+            previous = thread
+        }
+        return longest
+    }
+
+    /**
+     * The most consecutive dumps in [lifespan] where the thread's stack was deeper than in the dump before.
+     */
+    fun growingFor(lifespan: ThreadLifespan): Int {
+        var longest = 0
+        var run = 0
+        var previous: Thread? = null
+        for (thread in lifespan) {
+            run = when {
+                thread == null -> 0
+                previous != null && thread.stacktrace.size > previous.stacktrace.size -> run + 1
+                else -> 1
+            }
+            longest = maxOf(longest, run)
+            previous = thread
+        }
+        // a single dump is never growing
+        return if (longest > 1) longest else 0
+    }
+
+    /**
+     * Every lifespan that was stuck, or growing, for at least [minimumDumps] consecutive dumps.
+     */
+    fun find(lifespans: List<ThreadLifespan>, minimumDumps: Int): List<Finding> {
+        return lifespans.mapNotNull { lifespan ->
+            val stuckFor = stuckFor(lifespan)
+            val growingFor = growingFor(lifespan)
+            if (stuckFor >= minimumDumps || growingFor >= minimumDumps) {
+                Finding(lifespan.last { it != null }!!, stuckFor, growingFor)
+            } else {
+                null
+            }
+        }.sortedWith(compareByDescending(Finding::stuckFor).thenByDescending(Finding::growingFor))
+    }
+
+    private fun Stacktrace.isSameAs(other: Stacktrace): Boolean {
+        return this === other || size == other.size && hashCode() == other.hashCode() && this == other
+    }
+}
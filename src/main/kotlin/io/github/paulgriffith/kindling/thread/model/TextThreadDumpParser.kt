@@ -0,0 +1,279 @@
+package io.github.paulgriffith.kindling.thread.model
+
+import java.lang.Thread.State as ThreadState
+
+/**
+ * Parses the two plain text thread dump formats, one line at a time, in a single pass:
+ * - the script format (`system.util.threadDump()`), where each thread is a quoted name, a `CPU:` line, a
+ * `java.lang.Thread.State:` line, and the stack, terminated by a blank line
+ * - the web page format (the gateway's status page), where each thread starts with a `Thread [name] id=...` header and
+ * its indented stack runs until the next header or a closing quote
+ *
+ * Both produce exactly the same threads as matching the whole dump against a regex would, but never need the dump as
+ * a single string and never backtrack across lines. As with the regex, a thread that isn't properly terminated (e.g. by
+ * a truncated file) is dropped.
+ */
+internal object TextThreadDumpParser {
+    private val scriptCpu = """CPU:\s(\d{1,3}\.\d{2})%""".toRegex()
+    private val scriptState = """^java\.lang\.Thread\.State:\s(\w+_?\w+)""".toRegex()
+
+    private val webHeader = """(Daemon )?Thread \[(.*)] id=(\d*), \((\w*)\)""".toRegex()
+
+    private const val OWNS_MONITOR = "owns monitor: "
+    private const val OWNS_SYNCHRONIZER = "owns synchronizer: "
+    private const val WAITING_FOR = "waiting for: "
+    private const val OWNED_BY = " (owned by "
+
+    fun parseScript(lines: Sequence<String>): List<Thread> {
+        val threads = mutableListOf<Thread>()
+
+        var name: String? = null
+        var cpu: String? = null
+        var state: String? = null
+        var stack: MutableList<String>? = null
+
+        fun reset() {
+            name = null
+            cpu = null
+            state = null
+            stack = null
+        }
+
+        for (line in lines) {
+            val currentStack = stack
+            when {
+                currentStack != null -> {
+                    if (line.isEmpty()) {
+                        threads += Thread(
+                            id = name!!.hashCode(),
+                            name = name!!,
+                            cpuUsage = cpu!!.toDouble(),
+                            state = ThreadState.valueOf(state!!),
+                            isDaemon = false,
+                            stacktrace = currentStack.map(String::trim),
+                        )
+                        reset()
+                    } else {
+                        currentStack += line
+                    }
+                }
+
+                // between the state and the first frame, blank lines are skipped
+                state != null -> if (line.isNotBlank()) {
+                    stack = mutableListOf(line)
+                }
+
+                name != null && line.isBlank() -> Unit
+
+                cpu != null -> {
+                    val trimmed = line.trimStart()
+                    val match = scriptState.find(trimmed)
+                    if (match != null) {
+                        state = match.groupValues[1]
+                        val rest = trimmed.substring(match.range.last + 1)
+                        if (rest.isNotBlank()) {
+                            stack = mutableListOf(rest)
+                        }
+                    } else {
+                        reset()
+                        name = scriptName(line)
+                    }
+                }
+
+                name != null -> {
+                    val match = scriptCpu.matchEntire(line.trim())
+                    if (match != null) {
+                        cpu = match.groupValues[1]
+                    } else {
+                        reset()
+                        name = scriptName(line)
+                    }
+                }
+
+                else -> name = scriptName(line)
+            }
+        }
+
+        return threads
+    }
+
+    /**
+     * A quoted thread name, followed by nothing but whitespace.
+     */
+    private fun scriptName(line: String): String? {
+        val first = line.indexOf('"')
+        val last = line.lastIndexOf('"')
+        return if (first >= 0 && last > first && line.substring(last + 1).isBlank()) {
+            line.substring(first + 1, last)
+        } else {
+            null
+        }
+    }
+
+    fun parseWebPage(lines: Sequence<String>): List<Thread> {
+        val threads = mutableListOf<Thread>()
+
+        var header: MatchResult? = null
+        var stack: MutableList<String>? = null
+
+        fun emit() {
+            threads += webThread(header!!, stack.orEmpty())
+            header = null
+            stack = null
+        }
+
+        for (line in lines) {
+            var remaining: String? = line
+            while (remaining != null) {
+                val current: String = remaining
+                remaining = null
+
+                val currentHeader = header
+                val currentStack = stack
+                when {
+                    currentHeader == null -> header = webHeader.find(current)?.takeIf { match ->
+                        current.substring(match.range.last + 1).trim().let { it.isEmpty() || it == "(native)" }
+                    }
+
+                    currentStack == null -> {
+                        val indent = current.indexOfFirst { !it.isWhitespace() }
+                        when {
+                            indent == -1 -> Unit
+                            indent >= 4 -> {
+                                // the stack starts with exactly four characters of indentation
+                                val first = current.substring(indent - 4)
+                                val end = webTerminator(first, 5)
+                                if (end == -1) {
+                                    stack = mutableListOf(first)
+                                } else {
+                                    stack = mutableListOf(first.substring(0, end))
+                                    emit()
+                                    remaining = first.substring(end)
+                                }
+                            }
+
+                            // too little indentation for a stack, but the next thread starts here, so this one has none
+                            webTerminator(current, indent) == indent -> {
+                                emit()
+                                remaining = current.substring(indent)
+                            }
+
+                            else -> {
+                                header = null
+                                remaining = current
+                            }
+                        }
+                    }
+
+                    else -> {
+                        val end = webTerminator(current, 0)
+                        if (end == -1) {
+                            currentStack += current
+                        } else {
+                            if (end > 0) {
+                                currentStack += current.substring(0, end)
+                            }
+                            emit()
+                            remaining = current.substring(end)
+                        }
+                    }
+                }
+            }
+        }
+
+        return threads
+    }
+
+    /**
+     * The index of the first place at or after [from] where another thread (or the end of the dump) starts, or -1.
+     */
+    private fun webTerminator(line: String, from: Int): Int {
+        return sequenceOf(
+            line.indexOf('"', from),
+            line.indexOf("Daemon Thread ", from),
+            line.indexOf("Thread ", from),
+        ).filter { it >= 0 }.minOrNull() ?: -1
+    }
+
+    private fun webThread(header: MatchResult, rawStack: List<String>): Thread {
+        val (isDaemon, name, id, state) = header.destructured
+        val stack = rawStack.trimIndent()
+
+        val monitors = mutableListOf<Thread.Monitors>()
+        val synchronizers = mutableListOf<String>()
+        var blocker: Thread.Blocker? = null
+        val frames = mutableListOf<String>()
+
+        for ((index, line) in stack.withIndex()) {
+            line.valueAfter(OWNS_MONITOR)?.let { monitors += Thread.Monitors(it) }
+            line.valueAfter(OWNS_SYNCHRONIZER)?.let { synchronizers += it }
+            if (blocker == null) {
+                blocker = line.blocker()
+            }
+            // as with `^` in a multiline regex, an empty line at the very end doesn't count as a line
+            val isTrailingEmpty = index == stack.lastIndex && line.isEmpty()
+            if (!isTrailingEmpty && !line.startsWith("waiting ") && !line.startsWith("owns ")) {
+                frames += line
+            }
+        }
+
+        return Thread(
+            id = id.toInt(),
+            name = name,
+            state = ThreadState.valueOf(state),
+            isDaemon = isDaemon.isNotEmpty(),
+            blocker = blocker,
+            lockedMonitors = monitors,
+            lockedSynchronizers = synchronizers,
+            stacktrace = frames,
+        )
+    }
+
+    private fun String.valueAfter(prefix: String): String? {
+        val index = indexOf(prefix)
+        return if (index >= 0) substring(index + prefix.length) else null
+    }
+
+    private fun String.blocker(): Thread.Blocker? {
+        var index = indexOf(WAITING_FOR)
+        while (index >= 0) {
+            val lockStart = index + WAITING_FOR.length
+            var lockEnd = lockStart
+            while (lockEnd < length && !this[lockEnd].isRegexWhitespace()) {
+                lockEnd++
+            }
+            if (lockEnd > lockStart) {
+                val owner = if (startsWith(OWNED_BY, lockEnd)) {
+                    val ownerStart = lockEnd + OWNED_BY.length
+                    var ownerEnd = ownerStart
+                    while (ownerEnd < length && this[ownerEnd] in '0'..'9') {
+                        ownerEnd++
+                    }
+                    substring(ownerStart, ownerEnd).toIntOrNull()
+                } else {
+                    null
+                }
+                return Thread.Blocker(substring(lockStart, lockEnd), owner)
+            }
+            index = indexOf(WAITING_FOR, index + 1)
+        }
+        return null
+    }
+
+    /**
+     * Matches `\s` in a (non-unicode) regex, which is narrower than [Char.isWhitespace].
+     */
+    private fun Char.isRegexWhitespace(): Boolean = this == ' ' || this in '\t'..'\r'
+
+    /**
+     * Equivalent to joining these lines, calling [String.trimIndent], and splitting them again.
+     */
+    private fun List<String>.trimIndent(): List<String> {
+        val minCommonIndent = filter(String::isNotBlank).minOfOrNull { line ->
+            line.indexOfFirst { !it.isWhitespace() }.let { if (it == -1) line.length else it }
+        } ?: 0
+        return filterIndexed { index, line ->
+            !((index == 0 || index == lastIndex) && line.isBlank())
+        }.map { it.drop(minCommonIndent) }
+    }
+}
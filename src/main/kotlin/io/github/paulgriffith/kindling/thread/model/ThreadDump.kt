@@ -2,13 +2,15 @@ package io.github.paulgriffith.kindling.thread.model
 
 import io.github.paulgriffith.kindling.core.ToolOpeningException
 import io.github.paulgriffith.kindling.utils.getLogger
-import io.github.paulgriffith.kindling.utils.getValue
+import kotlinx.serialization.ExperimentalSerializationApi
 import kotlinx.serialization.SerialName
 import kotlinx.serialization.Serializable
 import kotlinx.serialization.SerializationException
 import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.decodeFromStream
+import java.io.BufferedInputStream
+import java.io.BufferedReader
 import java.io.InputStream
-import java.lang.Thread.State as ThreadState
 
 @Serializable
 data class ThreadDump internal constructor(
@@ -24,105 +26,91 @@ data class ThreadDump internal constructor(
 
         private val logger = getLogger<ThreadDump>()
 
-        fun fromStream(stream: InputStream): ThreadDump? {
-            val text = stream.reader().readText()
-            return try {
-                JSON.decodeFromString(serializer(), text)
-            } catch (ex: SerializationException) {
-                val lines = text.lines()
-                if (lines.size <= 2) throw ToolOpeningException("Not a fully formed thread dump")
-                val firstLine = lines.first()
-
-                val deadlockIds = if (lines[2].contains("Deadlock")) {
-                    deadlocksPattern.findAll(lines[3]).map { match -> match.value.toInt() }.toList()
-                } else {
-                    emptyList()
+        /**
+         * Reads a thread dump from [stream], in any of the formats Ignition has ever produced. The format is detected
+         * from the first few KB, so the stream is only read once, and no format is ever held in memory as a single
+         * string: JSON dumps are decoded straight from the stream and text dumps are parsed a line at a time.
+         */
+        @OptIn(ExperimentalSerializationApi::class)
+        fun fromStream(stream: InputStream): ThreadDump {
+            val buffered = stream.buffered(BUFFER_SIZE).apply { skipByteOrderMark() }
+            return if (buffered.sniffFirstChar() == '{') {
+                try {
+                    JSON.decodeFromStream(serializer(), buffered)
+                } catch (ex: SerializationException) {
+                    throw ToolOpeningException("Not a valid thread dump", ex)
                 }
-
-                ThreadDump(
-                    version = versionPattern.find(firstLine)?.value
-                        ?: throw ToolOpeningException("No version, not a thread dump"),
-                    threads = when {
-                        firstLine.contains(":") -> parseScript(text)
-                        else -> parseWebPage(text)
-                    },
-                    deadlockIds = deadlockIds,
-                )
+            } else {
+                fromText(buffered.bufferedReader())
             }
         }
 
-        private val versionPattern = """[78]\.\d\.\d\d?.*""".toRegex()
+        private fun fromText(reader: BufferedReader): ThreadDump {
+            val lines = reader.lineSequence().iterator()
+            val head = buildList {
+                while (size < 4 && lines.hasNext()) {
+                    add(lines.next())
+                }
+            }
+            if (head.size <= 2) throw ToolOpeningException("Not a fully formed thread dump")
+            val firstLine = head.first()
 
-        private val deadlocksPattern = """\d+""".toRegex()
+            val deadlockIds = if (head[2].contains("Deadlock")) {
+                deadlocksPattern.findAll(head.getOrElse(3) { "" }).map { match -> match.value.toInt() }.toList()
+            } else {
+                emptyList()
+            }
+
+            val version = versionPattern.find(firstLine)?.value
+                ?: throw ToolOpeningException("No version, not a thread dump")
 
-        private val scriptThreadRegex = """
-            "(?<name>.*)"
-            \s*CPU:\s(?<cpu>\d{1,3}\.\d{2})%
-            \s*java\.lang\.Thread\.State:\s(?<state>\w+_?\w+)
-            \s*(?<stack>[\S\s]+?)[\r\n]{2,}
-        """.trimIndent().toRegex(RegexOption.COMMENTS)
+            val allLines = head.asSequence() + lines.asSequence()
+            return ThreadDump(
+                version = version,
+                threads = when {
+                    firstLine.contains(":") -> TextThreadDumpParser.parseScript(allLines)
+                    else -> TextThreadDumpParser.parseWebPage(allLines)
+                },
+                deadlockIds = deadlockIds,
+            )
+        }
 
-        private val webThreadRegex = """
-            (?<isDaemon>Daemon )?Thread \[(?<name>.*)] id=(?<id>\d*), \((?<state>\w*)\)\s*(?:\(native\))?\s*
-            ?(?<stack>\s{4}[\S\s]+?)?
-            ?(?=(?:Daemon )?Thread |")
-        """.trimIndent().toRegex()
-        private val webThreadMonitorRegex = "owns monitor: (?<monitor>.*)".toRegex()
-        private val webThreadSynchronizerRegex = "owns synchronizer: (?<synchronizer>.*)".toRegex()
-        private val webThreadBlockerRegex = "waiting for: (?<lock>\\S+)(?: \\(owned by (?<owner>\\d*))?".toRegex()
-        private val webThreadStackRegex = "^(?<line>(?!waiting |owns ).*)$".toRegex(RegexOption.MULTILINE)
+        private const val BUFFER_SIZE = 64 * 1024
+        private const val SNIFF_SIZE = 4 * 1024
 
-        private fun parseScript(dump: String): List<Thread> {
-            return scriptThreadRegex.findAll(dump).map { matcher ->
-                val name by matcher.groups
-                val cpu by matcher.groups
-                val state by matcher.groups
-                val stack by matcher.groups
+        private val UTF_8_BOM = byteArrayOf(0xEF.toByte(), 0xBB.toByte(), 0xBF.toByte())
 
-                Thread(
-                    id = name.value.hashCode(),
-                    name = name.value,
-                    cpuUsage = cpu.value.toDouble(),
-                    state = ThreadState.valueOf(state.value),
-                    isDaemon = false,
-                    stacktrace = stack.value.lines().map(String::trim),
-                )
-            }.toList()
+        /**
+         * Consumes a UTF-8 byte order mark at the start of this stream, if there is one, so neither decoder sees it.
+         */
+        private fun BufferedInputStream.skipByteOrderMark() {
+            mark(UTF_8_BOM.size)
+            if (!readNBytes(UTF_8_BOM.size).contentEquals(UTF_8_BOM)) {
+                reset()
+            }
         }
 
-        private fun parseWebPage(dump: String): List<Thread> {
-            return webThreadRegex.findAll(dump).map { matcher ->
-                val isDaemon = matcher.groups["isDaemon"]?.value != null
-                val name by matcher.groups
-                val id by matcher.groups
-                val state by matcher.groups
-                val stack = matcher.groups["stack"]?.value?.trimIndent() ?: ""
-                val monitors = webThreadMonitorRegex.findAll(stack).mapNotNull { monitorMatcher ->
-                    monitorMatcher.groups["monitor"]?.value?.let {
-                        Thread.Monitors(it)
-                    }
-                }.toList()
-                val synchronizers = webThreadSynchronizerRegex.findAll(stack).mapNotNull { synchronizerMatcher ->
-                    synchronizerMatcher.groups["synchronizer"]?.value
-                }.toList()
-                val blocker = webThreadBlockerRegex.find(stack)?.groups?.let { blockerMatcher ->
-                    Thread.Blocker(blockerMatcher["lock"]!!.value, blockerMatcher["owner"]?.value?.toIntOrNull())
+        /**
+         * Peeks at the start of this stream and returns the first character that isn't whitespace, leaving the stream
+         * positioned where it started.
+         */
+        private fun BufferedInputStream.sniffFirstChar(): Char? {
+            mark(SNIFF_SIZE)
+            try {
+                repeat(SNIFF_SIZE) {
+                    val byte = read()
+                    if (byte == -1) return null
+                    val char = byte.toChar()
+                    if (!char.isWhitespace()) return char
                 }
-                val parsedStack = webThreadStackRegex.findAll(stack).mapNotNull { stackMatcher ->
-                    stackMatcher.groups["line"]?.value
-                }.toList()
-
-                Thread(
-                    id = id.value.toInt(),
-                    name = name.value,
-                    state = ThreadState.valueOf(state.value),
-                    isDaemon = isDaemon,
-                    blocker = blocker,
-                    lockedMonitors = monitors,
-                    lockedSynchronizers = synchronizers,
-                    stacktrace = parsedStack,
-                )
-            }.toList()
+                return null
+            } finally {
+                reset()
+            }
         }
+
+        private val versionPattern = """[78]\.\d\.\d\d?.*""".toRegex()
+
+        private val deadlocksPattern = """\d+""".toRegex()
     }
 }
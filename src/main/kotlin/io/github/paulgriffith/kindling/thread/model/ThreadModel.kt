@@ -15,6 +15,8 @@ import java.lang.Thread.State.RUNNABLE
 import java.lang.Thread.State.TIMED_WAITING
 import java.lang.Thread.State.WAITING
 import java.text.DecimalFormat
+import java.util.BitSet
+import java.util.IdentityHashMap
 import javax.swing.table.AbstractTableModel
 import java.lang.Thread.State as ThreadState
 
@@ -34,6 +36,7 @@ enum class ThreadColumnIdentifier {
     BLOCKER,
     STACKTRACE,
     SCOPE,
+    STUCK,
 }
 
 sealed class ThreadColumnList : ColumnList<ThreadLifespan>() {
@@ -141,14 +144,120 @@ class ThreadModel(val threadData: List<ThreadLifespan>) : AbstractTableModel() {
 
     val columns = if (isSingleContext) SingleThreadColumns else MultiThreadColumns
 
+    /**
+     * Every column's values, computed for every row the first time anything in that column is asked for, so painting
+     * and sorting never re-aggregate a lifespan. [ThreadColumnList.mark] is the exception, since it can change.
+     */
+    private val columnValues = arrayOfNulls<ColumnValues>(columns.size)
+
+    /**
+     * Columns by identity, so typed lookups don't compare every column definition.
+     */
+    private val columnIndices: Map<Column<ThreadLifespan, *>, Int> =
+        columns.withIndex().associateTo(IdentityHashMap()) { (index, column) -> column to index }
+
+    private val markColumn = columnIndices.getValue(columns.mark)
+
     override fun getColumnName(column: Int): String = columns[column].header
     override fun getRowCount(): Int = threadData.size
     override fun getColumnCount(): Int = columns.size
-    override fun getValueAt(row: Int, column: Int): Any? = get(row, columns[column])
+    override fun getValueAt(row: Int, column: Int): Any? {
+        if (column == markColumn) return columns.mark.getValue(threadData[row])
+        val values = columnValues[column] ?: computeColumn(column).also { columnValues[column] = it }
+        return values[row]
+    }
+
     override fun getColumnClass(column: Int): Class<*> = columns[column].clazz
+
+    @Suppress("UNCHECKED_CAST")
     operator fun <T> get(row: Int, column: Column<ThreadLifespan, T>): T {
-        return threadData[row].let { info ->
-            column.getValue(info)
+        val index = columnIndices[column]
+        return if (index != null) {
+            getValueAt(row, index) as T
+        } else {
+            column.getValue(threadData[row])
+        }
+    }
+
+    private fun computeColumn(column: Int): ColumnValues {
+        val definition = columns[column]
+        return when (definition.clazz) {
+            Int::class.javaObjectType -> ColumnValues.Ints(threadData.size) { row -> definition.getValue(threadData[row]) as Int? }
+            Double::class.javaObjectType -> ColumnValues.Doubles(threadData.size) { row ->
+                definition.getValue(threadData[row]) as Double?
+            }
+            Boolean::class.javaObjectType -> ColumnValues.Booleans(threadData.size) { row ->
+                definition.getValue(threadData[row]) as Boolean?
+            }
+            else -> {
+                // aggregated strings (e.g. multi-dump states) repeat a lot, so only keep one copy of each
+                val strings = HashMap<String, String>()
+                ColumnValues.Objects(
+                    Array(threadData.size) { row ->
+                        when (val value = definition.getValue(threadData[row])) {
+                            is String -> strings.getOrPut(value) { value }
+                            else -> value
+                        }
+                    },
+                )
+            }
+        }
+    }
+
+    /**
+     * A column's value for every row. Numbers and booleans are kept unboxed; nulls, which most columns never have, are
+     * tracked separately.
+     */
+    private sealed class ColumnValues {
+        abstract operator fun get(row: Int): Any?
+
+        class Ints(size: Int, value: (row: Int) -> Int?) : ColumnValues() {
+            private val values = IntArray(size)
+            private val nulls = BitSet()
+
+            init {
+                for (row in 0 until size) {
+                    val v = value(row)
+                    if (v == null) nulls.set(row) else values[row] = v
+                }
+            }
+
+            override fun get(row: Int): Any? = if (nulls[row]) null else values[row]
+        }
+
+        class Doubles(size: Int, value: (row: Int) -> Double?) : ColumnValues() {
+            private val values = DoubleArray(size)
+            private val nulls = BitSet()
+
+            init {
+                for (row in 0 until size) {
+                    val v = value(row)
+                    if (v == null) nulls.set(row) else values[row] = v
+                }
+            }
+
+            override fun get(row: Int): Any? = if (nulls[row]) null else values[row]
+        }
+
+        class Booleans(size: Int, value: (row: Int) -> Boolean?) : ColumnValues() {
+            private val values = BitSet(size)
+            private val nulls = BitSet()
+
+            init {
+                for (row in 0 until size) {
+                    when (value(row)) {
+                        null -> nulls.set(row)
+                        true -> values.set(row)
+                        false -> Unit
+                    }
+                }
+            }
+
+            override fun get(row: Int): Any? = if (nulls[row]) null else values[row]
+        }
+
+        class Objects(private val values: Array<Any?>) : ColumnValues() {
+            override fun get(row: Int): Any? = values[row]
         }
     }
 
@@ -208,6 +317,17 @@ class ThreadModel(val threadData: List<ThreadLifespan>) : AbstractTableModel() {
             },
         )
 
+        val stuck = Column<ThreadLifespan, Int>(
+            "Stuck",
+            columnCustomization = {
+                minWidth = 50
+                maxWidth = 50
+                toolTipText = "Most consecutive dumps RUNNABLE or BLOCKED with an unchanged stack"
+                identifier = ThreadColumnIdentifier.STUCK
+            },
+            getValue = StuckThreads::stuckFor,
+        )
+
         init {
             add(mark)
             add(id)
@@ -216,6 +336,7 @@ class ThreadModel(val threadData: List<ThreadLifespan>) : AbstractTableModel() {
             add(cpu.copy(header = "Max CPU"))
             add(depth.copy(header = "Max Depth"))
             add(blocker)
+            add(stuck)
             add(system)
             add(pool)
         }
@@ -0,0 +1,141 @@
+package io.github.paulgriffith.kindling.thread.model
+
+import java.util.Collections
+import java.util.IdentityHashMap
+
+/**
+ * A case-insensitive substring index over every thread's name, system and scope, and every frame of every stack, in a
+ * set of dumps. Built once, and extended as dumps are [add]ed; each [search] is then a trigram posting lookup over
+ * the distinct strings, rather than a scan over every frame of every thread.
+ *
+ * Frames are indexed per distinct stack, not per thread, so the many threads sharing an (interned) stack cost nothing
+ * extra.
+ */
+class ThreadSearchIndex(threadDumps: List<ThreadDump?> = emptyList()) {
+    /**
+     * Every distinct (lowercase) string, by id.
+     */
+    private val strings = ArrayList<String>()
+    private val ids = HashMap<String, Int>()
+
+    /**
+     * For each string id, the threads with that name, system or scope.
+     */
+    private val threadPostings = ArrayList<MutableList<Thread>?>()
+
+    /**
+     * For each string id, the stacks containing that frame.
+     */
+    private val stackPostings = ArrayList<MutableList<Stacktrace>?>()
+
+    /**
+     * For each trigram, the (ascending) ids of every string containing it.
+     */
+    private val trigrams = HashMap<Long, IntList>()
+
+    private val indexedStacks = Collections.newSetFromMap(IdentityHashMap<Stacktrace, Boolean>())
+
+    init {
+        threadDumps.forEach(::add)
+    }
+
+    /**
+     * Indexes another dump, e.g. one that's just arrived in a watched folder.
+     */
+    @Synchronized
+    fun add(threadDump: ThreadDump?) {
+        for (thread in threadDump?.threads.orEmpty()) {
+            for (value in listOfNotNull(thread.name, thread.system, thread.scope)) {
+                val id = idOf(value)
+                val postings = threadPostings[id] ?: mutableListOf<Thread>().also { threadPostings[id] = it }
+                postings += thread
+            }
+            if (indexedStacks.add(thread.stacktrace)) {
+                for (frame in thread.stacktrace.toSet()) {
+                    val id = idOf(frame)
+                    val postings = stackPostings[id] ?: mutableListOf<Stacktrace>().also { stackPostings[id] = it }
+                    postings += thread.stacktrace
+                }
+            }
+        }
+    }
+
+    private fun idOf(value: String): Int {
+        val lowercase = value.lowercase()
+        return ids.getOrPut(lowercase) {
+            val id = strings.size
+            strings += lowercase
+            threadPostings += null
+            stackPostings += null
+            lowercase.trigrams().forEach { trigram ->
+                trigrams.getOrPut(trigram, ::IntList).add(id)
+            }
+            id
+        }
+    }
+
+    /**
+     * Every thread matching [query] (case-insensitively) anywhere in its name, system, scope or stack.
+     */
+    @Synchronized
+    fun search(query: String): Matches {
+        val lowercase = query.lowercase()
+        val candidates: Sequence<Int> = if (lowercase.length < 3) {
+            strings.indices.asSequence()
+        } else {
+            val postings = lowercase.trigrams().map { trigrams[it] ?: return Matches.NONE }
+            val smallest = postings.minBy { it.size }
+            smallest.asSequence().filter { id -> postings.all { it === smallest || it.contains(id) } }
+        }
+
+        val threads = Collections.newSetFromMap(IdentityHashMap<Thread, Boolean>())
+        val stacks = Collections.newSetFromMap(IdentityHashMap<Stacktrace, Boolean>())
+        for (id in candidates) {
+            if (lowercase in strings[id]) {
+                threadPostings[id]?.let(threads::addAll)
+                stackPostings[id]?.let(stacks::addAll)
+            }
+        }
+        return Matches(threads, stacks)
+    }
+
+    class Matches internal constructor(
+        private val threads: Set<Thread>,
+        private val stacks: Set<Stacktrace>,
+    ) {
+        operator fun contains(thread: Thread): Boolean = thread in threads || thread.stacktrace in stacks
+
+        internal companion object {
+            val NONE = Matches(emptySet(), emptySet())
+        }
+    }
+
+    /**
+     * A growable, sorted list of ints; ids are always added in ascending order.
+     */
+    private class IntList {
+        private var values = IntArray(4)
+        var size = 0
+            private set
+
+        fun add(value: Int) {
+            if (size > 0 && values[size - 1] == value) return
+            if (size == values.size) {
+                values = values.copyOf(size * 2)
+            }
+            values[size++] = value
+        }
+
+        fun contains(value: Int): Boolean = values.binarySearch(value, 0, size) >= 0
+
+        fun asSequence(): Sequence<Int> = (0 until size).asSequence().map { values[it] }
+    }
+
+    companion object {
+        private fun String.trigrams(): Set<Long> {
+            return (0..length - 3).mapTo(HashSet()) { i ->
+                (this[i].code.toLong() shl 32) or (this[i + 1].code.toLong() shl 16) or this[i + 2].code.toLong()
+            }
+        }
+    }
+}
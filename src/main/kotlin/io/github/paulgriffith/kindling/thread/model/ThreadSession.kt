@@ -0,0 +1,359 @@
+package io.github.paulgriffith.kindling.thread.model
+
+import io.github.paulgriffith.kindling.core.ToolOpeningException
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption.READ
+import kotlin.io.path.name
+import kotlin.io.path.outputStream
+import java.lang.Thread.State as ThreadState
+
+/**
+ * A set of already parsed thread dumps, with their marks and the filters they were being viewed with, as saved to (and
+ * read back from) a compact binary file. Reading one never parses any text or JSON.
+ *
+ * The file is a series of sections followed by a table of where each one starts, so a reader maps the whole file and
+ * reads each section in place:
+ * - strings: every distinct string (frames, names, locks, versions...) once, UTF-8, behind a table of offsets;
+ * - stacks: every distinct stack, as string ids;
+ * - dumps: each dump's threads, referring to strings and stacks by id;
+ * - filters: the view's selections and search.
+ */
+class ThreadSession(
+    /**
+     * The file name each dump was originally loaded from.
+     */
+    val names: List<String>,
+    /**
+     * One per name; a failure for dumps that couldn't be loaded.
+     */
+    val results: List<Result<ThreadDump>>,
+    val filters: Filters,
+) {
+    init {
+        require(names.size == results.size)
+    }
+
+    /**
+     * The values selected in each of the view's filter lists; `null` entries are threads with no system or pool.
+     */
+    data class Filters(
+        val states: List<String> = emptyList(),
+        val systems: List<String?> = emptyList(),
+        val pools: List<String?> = emptyList(),
+        val query: String? = null,
+        /**
+         * Indices of the dumps that were checked.
+         */
+        val visibleDumps: List<Int> = emptyList(),
+    )
+
+    fun write(path: Path) {
+        val strings = StringTable()
+        val stacks = LinkedHashMap<Stacktrace, Int>()
+
+        // everything but the strings refers to them by id, so they're collected first and written last
+        val dumpSection = section {
+            writeInt(results.size)
+            for ((name, result) in names.zip(results)) {
+                writeInt(strings[name])
+                val threadDump = result.getOrNull()
+                if (threadDump == null) {
+                    writeByte(0)
+                    writeInt(strings[result.exceptionOrNull()?.message ?: "Failed to load"])
+                    continue
+                }
+                writeByte(1)
+                writeInt(strings[threadDump.version])
+                writeIntList(threadDump.deadlockIds) { it }
+                writeInt(threadDump.threads.size)
+                for (thread in threadDump.threads) {
+                    writeThread(thread, strings) { stack -> stacks.getOrPut(stack) { stacks.size } }
+                }
+            }
+        }
+        val filterSection = section {
+            writeInt(strings[filters.query])
+            writeIntList(filters.states, strings::get)
+            writeIntList(filters.systems, strings::get)
+            writeIntList(filters.pools, strings::get)
+            writeIntList(filters.visibleDumps) { it }
+        }
+        val stackSection = section {
+            writeInt(stacks.size)
+            for (stack in stacks.keys) {
+                writeIntList(stack, strings::get)
+            }
+        }
+        val stringSection = strings.toSection()
+
+        val sections = listOf(
+            STRINGS to stringSection,
+            STACKS to stackSection,
+            DUMPS to dumpSection,
+            FILTERS to filterSection,
+        )
+        // offsets are ints, so the whole thing has to fit in 2GB
+        check(sections.sumOf { (_, bytes) -> bytes.size.toLong() } < Int.MAX_VALUE - 1024) {
+            "Session is too large to save"
+        }
+
+        DataOutputStream(path.outputStream().buffered()).use { out ->
+            out.write(MAGIC)
+            out.writeInt(FORMAT_VERSION)
+            val offsets = sections.map { (_, bytes) ->
+                out.size().also { out.write(bytes) }
+            }
+
+            val tableOffset = out.size()
+            out.writeInt(sections.size)
+            sections.forEachIndexed { i, (id, bytes) ->
+                out.writeInt(id)
+                out.writeInt(offsets[i])
+                out.writeInt(bytes.size)
+            }
+            out.writeInt(tableOffset)
+            out.write(MAGIC)
+        }
+    }
+
+    private class StringTable {
+        private val ids = HashMap<String, Int>()
+        private val values = ArrayList<String>()
+
+        /**
+         * The id of [value], or -1 for null.
+         */
+        operator fun get(value: String?): Int {
+            if (value == null) return -1
+            return ids.getOrPut(value) {
+                values += value
+                values.lastIndex
+            }
+        }
+
+        fun toSection(): ByteArray {
+            val encoded = values.map { it.toByteArray(UTF_8) }
+            return section {
+                writeInt(encoded.size)
+                var offset = 0
+                for (bytes in encoded) {
+                    writeInt(offset)
+                    offset += bytes.size
+                }
+                writeInt(offset)
+                for (bytes in encoded) {
+                    write(bytes)
+                }
+            }
+        }
+    }
+
+    companion object {
+        const val EXTENSION = "tdsession"
+
+        private val MAGIC = "KTDS".toByteArray(Charsets.US_ASCII)
+        private const val FORMAT_VERSION = 1
+
+        private const val STRINGS = 1
+        private const val STACKS = 2
+        private const val DUMPS = 3
+        private const val FILTERS = 4
+
+        private const val DAEMON = 1
+        private const val MARKED = 2
+        private const val HAS_CPU = 4
+        private const val HAS_BLOCKER = 8
+        private const val HAS_OWNER = 16
+
+        private val STATES = ThreadState.values()
+
+        private fun section(write: DataOutputStream.() -> Unit): ByteArray {
+            val bytes = ByteArrayOutputStream()
+            DataOutputStream(bytes).use(write)
+            return bytes.toByteArray()
+        }
+
+        private inline fun <T> DataOutputStream.writeIntList(values: List<T>, id: (T) -> Int) {
+            writeInt(values.size)
+            for (value in values) {
+                writeInt(id(value))
+            }
+        }
+
+        private fun DataOutputStream.writeThread(thread: Thread, strings: StringTable, stackId: (Stacktrace) -> Int) {
+            writeInt(thread.id)
+            writeInt(strings[thread.name])
+            writeByte(thread.state.ordinal)
+            var flags = 0
+            if (thread.isDaemon) flags = flags or DAEMON
+            if (thread.marked) flags = flags or MARKED
+            if (thread.cpuUsage != null) flags = flags or HAS_CPU
+            if (thread.blocker != null) flags = flags or HAS_BLOCKER
+            if (thread.blocker?.owner != null) flags = flags or HAS_OWNER
+            writeByte(flags)
+            writeInt(strings[thread.system])
+            writeInt(strings[thread.scope])
+            thread.cpuUsage?.let(::writeDouble)
+            writeInt(thread.lockedMonitors.size)
+            for (monitor in thread.lockedMonitors) {
+                writeInt(strings[monitor.lock])
+                writeInt(strings[monitor.frame])
+            }
+            writeIntList(thread.lockedSynchronizers, strings::get)
+            thread.blocker?.let { blocker ->
+                writeInt(strings[blocker.lock])
+                blocker.owner?.let(::writeInt)
+            }
+            writeInt(stackId(thread.stacktrace))
+        }
+
+        /**
+         * Reads a session written by [write]. Stacks are interned into [frames], so they're shared exactly as they
+         * were when the session was saved.
+         */
+        fun read(path: Path, frames: StackFrameTable = StackFrameTable()): ThreadSession {
+            val buffer = FileChannel.open(path, READ).use { channel ->
+                if (channel.size() > Int.MAX_VALUE) throw ToolOpeningException("$path is too large to be a session")
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            }
+            try {
+                return read(buffer, frames)
+            } catch (ex: RuntimeException) {
+                throw ToolOpeningException("${path.name} is not a valid thread dump session", ex)
+            }
+        }
+
+        private fun read(buffer: ByteBuffer, frames: StackFrameTable): ThreadSession {
+            val magic = ByteArray(MAGIC.size)
+            buffer.get(0, magic)
+            require(magic.contentEquals(MAGIC)) { "Not a thread dump session" }
+            val version = buffer.getInt(MAGIC.size)
+            require(version == FORMAT_VERSION) { "Unsupported session version $version" }
+
+            val table = buffer.getInt(buffer.limit() - MAGIC.size - Int.SIZE_BYTES)
+            val sections = buildMap {
+                val count = buffer.getInt(table)
+                repeat(count) { i ->
+                    val entry = table + Int.SIZE_BYTES + i * 3 * Int.SIZE_BYTES
+                    val offset = buffer.getInt(entry + Int.SIZE_BYTES)
+                    val length = buffer.getInt(entry + 2 * Int.SIZE_BYTES)
+                    put(buffer.getInt(entry), buffer.slice(offset, length))
+                }
+            }
+            fun sectionOf(id: Int) = requireNotNull(sections[id]) { "Missing section $id" }
+
+            val strings = MappedStrings(sectionOf(STRINGS))
+
+            val stacks: List<InternedStacktrace> = sectionOf(STACKS).run {
+                // each distinct frame is only hashed into the table once, however many stacks it's in
+                val frameIds = IntArray(strings.size) { -1 }
+                List(int) {
+                    val stack = IntArray(int) {
+                        val id = int
+                        if (frameIds[id] < 0) {
+                            frameIds[id] = frames.frameId(strings[id]!!)
+                        }
+                        frameIds[id]
+                    }
+                    frames.stackOf(stack)
+                }
+            }
+
+            val names = mutableListOf<String>()
+            val results = mutableListOf<Result<ThreadDump>>()
+            sectionOf(DUMPS).run {
+                repeat(int) {
+                    names += strings[int]!!
+                    results += if (get().toInt() == 0) {
+                        Result.failure(ToolOpeningException(strings[int]!!))
+                    } else {
+                        Result.success(
+                            ThreadDump(
+                                version = strings[int]!!,
+                                deadlockIds = List(int) { int },
+                                threads = List(int) { readThread(strings, stacks) },
+                            ),
+                        )
+                    }
+                }
+            }
+
+            val filters = sectionOf(FILTERS).run {
+                Filters(
+                    query = strings[int],
+                    states = List(int) { strings[int]!! },
+                    systems = List(int) { strings[int] },
+                    pools = List(int) { strings[int] },
+                    visibleDumps = List(int) { int },
+                )
+            }
+
+            return ThreadSession(names, results, filters)
+        }
+
+        private val ByteBuffer.int: Int
+            get() = getInt()
+
+        private fun ByteBuffer.readThread(strings: MappedStrings, stacks: List<InternedStacktrace>): Thread {
+            val id = int
+            val name = strings[int]!!
+            val state = STATES[get().toInt()]
+            val flags = get().toInt()
+            val system = strings[int]
+            val scope = strings[int]
+            val cpuUsage = if (flags and HAS_CPU != 0) getDouble() else null
+            val lockedMonitors = List(int) {
+                Thread.Monitors(lock = strings[int]!!, frame = strings[int])
+            }
+            val lockedSynchronizers = List(int) { strings[int]!! }
+            val blocker = if (flags and HAS_BLOCKER != 0) {
+                Thread.Blocker(
+                    lock = strings[int]!!,
+                    owner = if (flags and HAS_OWNER != 0) int else null,
+                )
+            } else {
+                null
+            }
+            return Thread(
+                id = id,
+                name = name,
+                state = state,
+                isDaemon = flags and DAEMON != 0,
+                system = system,
+                scope = scope,
+                cpuUsage = cpuUsage,
+                lockedMonitors = lockedMonitors,
+                lockedSynchronizers = lockedSynchronizers,
+                blocker = blocker,
+                stacktrace = stacks[int],
+            ).apply {
+                marked = flags and MARKED != 0
+            }
+        }
+    }
+
+    /**
+     * The strings section, read in place; each string is only decoded the first time it's asked for.
+     */
+    private class MappedStrings(private val section: ByteBuffer) {
+        val size = section.getInt(0)
+        private val decoded = arrayOfNulls<String>(size)
+        private val dataStart = Int.SIZE_BYTES * (size + 2)
+
+        operator fun get(id: Int): String? {
+            if (id < 0) return null
+            return decoded[id] ?: run {
+                val start = section.getInt(Int.SIZE_BYTES * (id + 1))
+                val end = section.getInt(Int.SIZE_BYTES * (id + 2))
+                val bytes = ByteArray(end - start)
+                section.get(dataStart + start, bytes)
+                String(bytes, UTF_8).also { decoded[id] = it }
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package io.github.paulgriffith.kindling.thread.model
+
+/**
+ * Which thread is waiting on which, in a single dump: a thread blocked on a lock waits for whichever thread owns that
+ * lock, either as reported directly by its [Thread.Blocker] or by looking the lock up in every thread's
+ * [Thread.lockedMonitors] and [Thread.lockedSynchronizers]. Built in a single pass over the threads.
+ */
+class WaitForGraph(val threadDump: ThreadDump) {
+    private val threads = threadDump.threads
+
+    /**
+     * For each thread (by index), the index of the thread it's waiting for, or -1.
+     */
+    private val waitsFor = IntArray(threads.size) { -1 }
+
+    /**
+     * For each thread (by index), the indices of the threads waiting for it.
+     */
+    private val waiters: Array<MutableList<Int>> = Array(threads.size) { mutableListOf() }
+
+    private val ownerByLock = HashMap<String, Int>()
+
+    init {
+        val indexById = HashMap<Int, Int>(threads.size * 2)
+        threads.forEachIndexed { i, thread ->
+            indexById[thread.id] = i
+            for (monitor in thread.lockedMonitors) {
+                ownerByLock[monitor.lock] = i
+            }
+            for (synchronizer in thread.lockedSynchronizers) {
+                ownerByLock[synchronizer] = i
+            }
+        }
+        threads.forEachIndexed { i, thread ->
+            val blocker = thread.blocker ?: return@forEachIndexed
+            val owner = blocker.owner?.let(indexById::get) ?: ownerByLock[blocker.lock]
+            if (owner != null) {
+                waitsFor[i] = owner
+                waiters[owner] += i
+            }
+        }
+    }
+
+    operator fun get(thread: Int): Thread = threads[thread]
+
+    fun waitersOf(thread: Int): List<Int> = waiters[thread]
+
+    fun ownerOf(lock: String): Thread? = ownerByLock[lock]?.let(threads::get)
+
+    /**
+     * Every group of threads that are (directly or transitively) waiting on each other, i.e. deadlocked.
+     */
+    val cycles: List<List<Int>> by lazy {
+        stronglyConnectedComponents(threads.size) { i ->
+            if (waitsFor[i] >= 0) intArrayOf(waitsFor[i]) else IntArray(0)
+        }.filter { component ->
+            component.size > 1 || waitsFor[component[0]] == component[0]
+        }.map { component ->
+            // in the order they wait on each other
+            generateSequence(component[0]) { waitsFor[it] }.take(component.size).toList()
+        }
+    }
+
+    /**
+     * Threads that others are waiting for, but which aren't waiting themselves: the heads of every chain of blocked
+     * threads. Threads in one of the [cycles] have no head, so they're not included.
+     */
+    val heads: List<Int>
+        get() = threads.indices.filter { waiters[it].isNotEmpty() && waitsFor[it] < 0 }
+
+    /**
+     * Every owned lock at least one thread is waiting on, with the threads waiting on it. Threads parked on a condition
+     * nobody holds (e.g. idle pool workers) aren't contending for anything, so they're left out.
+     */
+    val contendedLocks: Map<String, List<Thread>>
+        get() = threads.indices.filter { waitsFor[it] >= 0 }.groupBy(
+            keySelector = { threads[it].blocker!!.lock },
+            valueTransform = threads::get,
+        )
+
+    data class LockContention(
+        val lock: String,
+        val owner: String?,
+        /**
+         * Waiting threads, summed over every dump.
+         */
+        val waiters: Int,
+        val maxWaiters: Int,
+        /**
+         * How many dumps had any thread waiting on this lock.
+         */
+        val dumps: Int,
+    )
+
+    companion object {
+        /**
+         * Every contended lock across [graphs], the most contended first.
+         */
+        fun contention(graphs: List<WaitForGraph>): List<LockContention> {
+            val byLock = LinkedHashMap<String, LockContention>()
+            for (graph in graphs) {
+                for ((lock, waiting) in graph.contendedLocks) {
+                    val previous = byLock[lock]
+                    byLock[lock] = LockContention(
+                        lock = lock,
+                        owner = previous?.owner ?: graph.ownerOf(lock)?.name,
+                        waiters = (previous?.waiters ?: 0) + waiting.size,
+                        maxWaiters = maxOf(previous?.maxWaiters ?: 0, waiting.size),
+                        dumps = (previous?.dumps ?: 0) + 1,
+                    )
+                }
+            }
+            return byLock.values.sortedWith(compareByDescending(LockContention::waiters).thenByDescending { it.dumps })
+        }
+
+        /**
+         * Tarjan's algorithm, without recursion (chains of blocked threads can be arbitrarily long). Returns each
+         * strongly connected component as the indices of its nodes.
+         */
+        fun stronglyConnectedComponents(size: Int, successors: (Int) -> IntArray): List<IntArray> {
+            val index = IntArray(size) { -1 }
+            val lowLink = IntArray(size)
+            val onStack = BooleanArray(size)
+            val stack = ArrayDeque<Int>()
+            val components = mutableListOf<IntArray>()
+            var nextIndex = 0
+
+            // the nodes being visited, and how far through each one's successors we are
+            val work = ArrayDeque<Pair<Int, Int>>()
+
+            for (start in 0 until size) {
+                if (index[start] >= 0) continue
+                work.addLast(start to 0)
+                while (work.isNotEmpty()) {
+                    val (node, position) = work.removeLast()
+                    if (position == 0) {
+                        index[node] = nextIndex
+                        lowLink[node] = nextIndex
+                        nextIndex += 1
+                        stack.addLast(node)
+                        onStack[node] = true
+                    }
+
+                    val next = successors(node)
+                    if (position < next.size) {
+                        work.addLast(node to position + 1)
+                        val successor = next[position]
+                        if (index[successor] < 0) {
+                            work.addLast(successor to 0)
+                        } else if (onStack[successor]) {
+                            lowLink[node] = minOf(lowLink[node], index[successor])
+                        }
+                        continue
+                    }
+
+                    // every successor has been visited
+                    if (lowLink[node] == index[node]) {
+                        val component = mutableListOf<Int>()
+                        do {
+                            val member = stack.removeLast()
+                            onStack[member] = false
+                            component += member
+                        } while (member != node)
+                        components += component.toIntArray()
+                    }
+                    work.lastOrNull()?.let { (parent, _) ->
+                        lowLink[parent] = minOf(lowLink[parent], lowLink[node])
+                    }
+                }
+            }
+            return components
+        }
+    }
+}
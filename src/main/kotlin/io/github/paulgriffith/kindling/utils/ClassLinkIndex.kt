@@ -0,0 +1,136 @@
+package io.github.paulgriffith.kindling.utils
+
+import java.net.URL
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption.REPLACE_EXISTING
+import java.nio.file.StandardOpenOption.READ
+import java.util.Arrays
+
+/**
+ * Javadoc URLs by fully qualified class name, read in place from the index built by `downloadJavadocs`.
+ *
+ * Entries are sorted by class name and grouped into blocks; each block starts with a whole entry, and the rest only
+ * store what differs from the entry before. A lookup binary searches the blocks' first entries, then decodes at most
+ * one block. Nothing is loaded onto the heap up front, and lookups are thread safe.
+ */
+class ClassLinkIndex(private val buffer: ByteBuffer) {
+    val size: Int
+    private val blockSize: Int
+    private val blockCount: Int
+    private val dataStart: Int
+
+    init {
+        val magic = ByteArray(MAGIC.size)
+        buffer.get(0, magic)
+        require(magic.contentEquals(MAGIC)) { "Not a class link index" }
+        val version = buffer.getInt(MAGIC.size)
+        require(version == FORMAT_VERSION) { "Unsupported class link index version $version" }
+
+        size = buffer.getInt(MAGIC.size + Int.SIZE_BYTES)
+        blockSize = buffer.getInt(MAGIC.size + 2 * Int.SIZE_BYTES)
+        blockCount = buffer.getInt(MAGIC.size + 3 * Int.SIZE_BYTES)
+        dataStart = BLOCK_OFFSETS + blockCount * Int.SIZE_BYTES
+    }
+
+    operator fun get(className: String): String? {
+        val key = className.toByteArray(UTF_8)
+
+        // the last block that starts at or before the key
+        var low = 0
+        var high = blockCount - 1
+        var block = -1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val start = blockStart(mid)
+            // a block's first entry shares nothing, so its name is whole
+            val cmp = compare(start + 2 * Short.SIZE_BYTES, unsignedShort(start + Short.SIZE_BYTES), key)
+            when {
+                cmp == 0 -> {
+                    val (urlStart, _) = decode(start, ByteArray(0))
+                    return String(decode(urlStart, ByteArray(0)).second, UTF_8)
+                }
+                cmp < 0 -> {
+                    block = mid
+                    low = mid + 1
+                }
+                else -> high = mid - 1
+            }
+        }
+        if (block < 0) return null
+
+        var position = blockStart(block)
+        var name = ByteArray(0)
+        var url = ByteArray(0)
+        repeat(minOf(blockSize, size - block * blockSize)) {
+            decode(position, name).let { (next, bytes) ->
+                position = next
+                name = bytes
+            }
+            decode(position, url).let { (next, bytes) ->
+                position = next
+                url = bytes
+            }
+            val cmp = Arrays.compareUnsigned(name, key)
+            if (cmp == 0) return String(url, UTF_8)
+            if (cmp > 0) return null
+        }
+        return null
+    }
+
+    private fun blockStart(block: Int): Int = dataStart + buffer.getInt(BLOCK_OFFSETS + block * Int.SIZE_BYTES)
+
+    private fun unsignedShort(position: Int): Int = buffer.getShort(position).toInt() and 0xFFFF
+
+    /**
+     * Decodes the front-coded value at [position], given the [previous] value in its block; returns the position after
+     * it along with the value.
+     */
+    private fun decode(position: Int, previous: ByteArray): Pair<Int, ByteArray> {
+        val shared = unsignedShort(position)
+        val length = unsignedShort(position + Short.SIZE_BYTES)
+        val value = previous.copyOf(shared + length)
+        buffer.get(position + 2 * Short.SIZE_BYTES, value, shared, length)
+        return position + 2 * Short.SIZE_BYTES + length to value
+    }
+
+    private fun compare(position: Int, length: Int, key: ByteArray): Int {
+        for (i in 0 until minOf(length, key.size)) {
+            val cmp = (buffer.get(position + i).toInt() and 0xFF) - (key[i].toInt() and 0xFF)
+            if (cmp != 0) return cmp
+        }
+        return length - key.size
+    }
+
+    companion object {
+        private val MAGIC = "KCLI".toByteArray(Charsets.US_ASCII)
+        private const val FORMAT_VERSION = 1
+        private val BLOCK_OFFSETS = MAGIC.size + 4 * Int.SIZE_BYTES
+
+        /**
+         * Maps the index at [resource] on the classpath, or returns `null` if there isn't one. Resources inside a jar
+         * can't be mapped where they are, so they're copied out to a temporary file first.
+         */
+        fun fromResource(resource: String): ClassLinkIndex? {
+            val url = ClassLinkIndex::class.java.getResource(resource) ?: return null
+            return ClassLinkIndex(map(url))
+        }
+
+        private fun map(url: URL): ByteBuffer {
+            val file = if (url.protocol == "file") {
+                Path.of(url.toURI())
+            } else {
+                Files.createTempFile("kindling-links", ".idx").also { temp ->
+                    temp.toFile().deleteOnExit()
+                    url.openStream().use { Files.copy(it, temp, REPLACE_EXISTING) }
+                }
+            }
+            return FileChannel.open(file, READ).use { channel ->
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            }
+        }
+    }
+}
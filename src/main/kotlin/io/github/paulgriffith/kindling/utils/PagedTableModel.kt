@@ -0,0 +1,111 @@
+package io.github.paulgriffith.kindling.utils
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import javax.swing.table.AbstractTableModel
+
+/**
+ * A table model over a data source too large to hold in memory. Rows are fetched a page at a time, in the background,
+ * as the table asks for them; the page after (or before) the one being displayed is fetched ahead of time in whichever
+ * direction the table is scrolling. Only the most recently used [maxPages] pages are kept.
+ *
+ * Rows that haven't been fetched yet report `null` for every column. All state is confined to the EDT.
+ */
+abstract class PagedTableModel<R>(
+    val pageSize: Int = 500,
+    private val maxPages: Int = 20,
+) : AbstractTableModel() {
+    private val pages = object : LinkedHashMap<Int, List<R>>(16, 0.75F, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, List<R>>): Boolean = size > maxPages
+    }
+    private val loading = mutableSetOf<Int>()
+    private var lastPage = 0
+
+    /**
+     * Incremented by [reset]; pages fetched for an older generation are discarded.
+     */
+    private var generation = 0
+
+    private var rows = 0
+
+    /**
+     * Fetches page [page] (rows `page * pageSize` until `(page + 1) * pageSize`). Called on a background thread.
+     * [previous] is the page immediately before, if it's already loaded, so implementations can continue from its last
+     * row (keyset pagination) rather than skipping over everything before it.
+     */
+    protected abstract fun fetchPage(page: Int, previous: List<R>?): List<R>
+
+    protected abstract fun getValueAt(row: R, column: Int): Any?
+
+    override fun getRowCount(): Int = rows
+
+    override fun getValueAt(rowIndex: Int, columnIndex: Int): Any? {
+        return this[rowIndex]?.let { row -> getValueAt(row, columnIndex) }
+    }
+
+    /**
+     * Returns the row at [rowIndex] if it's loaded, or schedules it to be loaded and returns null.
+     */
+    operator fun get(rowIndex: Int): R? {
+        val page = rowIndex / pageSize
+        val direction = page.compareTo(lastPage)
+        lastPage = page
+
+        val rows = pages[page]
+        if (rows == null) {
+            request(page)
+        } else if (direction != 0) {
+            request(page + direction)
+        }
+        return rows?.getOrNull(rowIndex % pageSize)
+    }
+
+    /**
+     * Discards every loaded page and sets a new row count, e.g. after the sort order or filter changes.
+     */
+    fun reset(rowCount: Int) {
+        generation += 1
+        pages.clear()
+        loading.clear()
+        rows = rowCount
+        fireTableDataChanged()
+    }
+
+    /**
+     * Updates the row count without discarding loaded pages, e.g. when an estimate is replaced by an exact count.
+     */
+    fun updateRowCount(rowCount: Int) {
+        if (rowCount != rows) {
+            rows = rowCount
+            fireTableDataChanged()
+        }
+    }
+
+    private fun request(page: Int) {
+        if (page < 0 || page * pageSize >= rows || page in pages || !loading.add(page)) return
+
+        val requestGeneration = generation
+        val previous = pages[page - 1]
+        BACKGROUND.launch {
+            val fetched = runCatching { fetchPage(page, previous) }
+                .onFailure { LOGGER.error("Unable to fetch page $page", it) }
+                .getOrDefault(emptyList())
+            EDT_SCOPE.launch {
+                if (requestGeneration == generation) {
+                    loading -= page
+                    pages[page] = fetched
+                    val first = page * pageSize
+                    if (first < rows) {
+                        fireTableRowsUpdated(first, minOf(first + pageSize, rows) - 1)
+                    }
+                }
+            }
+        }
+    }
+
+    companion object {
+        private val BACKGROUND = CoroutineScope(Dispatchers.IO)
+        private val LOGGER = getLogger<PagedTableModel<*>>()
+    }
+}
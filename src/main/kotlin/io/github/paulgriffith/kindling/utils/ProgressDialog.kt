@@ -0,0 +1,80 @@
+package io.github.paulgriffith.kindling.utils
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeoutOrNull
+import net.miginfocom.swing.MigLayout
+import java.awt.Dialog
+import java.awt.EventQueue
+import java.awt.KeyboardFocusManager
+import java.util.concurrent.atomic.AtomicInteger
+import javax.swing.JDialog
+import javax.swing.JLabel
+import javax.swing.JPanel
+import javax.swing.JProgressBar
+import javax.swing.WindowConstants
+
+/**
+ * Runs [block] in the background, showing a modal progress bar out of [total] steps while it works. [block] calls the
+ * function it's given once per completed step, from any thread, with a short description of that step.
+ *
+ * Blocks the caller until [block] completes, so it can be called from code that has to return a result (e.g.
+ * [io.github.paulgriffith.kindling.core.Tool.open]) - on the EDT, the modal dialog keeps the UI painting in the
+ * meantime. Nothing is shown if [block] finishes quickly, or if this isn't called from the EDT at all.
+ */
+fun <T> runWithProgress(
+    title: String,
+    total: Int,
+    block: suspend CoroutineScope.(step: (String) -> Unit) -> T,
+): T {
+    if (!EventQueue.isDispatchThread()) {
+        return runBlocking(Dispatchers.Default) { block {} }
+    }
+
+    val progress = JProgressBar(0, total)
+    val label = JLabel(" ")
+    val dialog = JDialog(
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().activeWindow,
+        title,
+        Dialog.ModalityType.APPLICATION_MODAL,
+    ).apply {
+        defaultCloseOperation = WindowConstants.DO_NOTHING_ON_CLOSE
+        contentPane = JPanel(MigLayout("ins 16, fill")).apply {
+            add(label, "growx, wmin 300, wrap")
+            add(progress, "growx")
+        }
+        pack()
+        setLocationRelativeTo(owner)
+    }
+
+    val completed = AtomicInteger()
+    val work = PROGRESS_SCOPE.async {
+        block { description ->
+            val count = completed.incrementAndGet()
+            EDT_SCOPE.launch {
+                progress.value = count
+                label.text = "$description ($count/$total)"
+            }
+        }
+    }
+    work.invokeOnCompletion {
+        EDT_SCOPE.launch { dialog.dispose() }
+    }
+
+    // briefly wait before bothering with a dialog at all
+    runBlocking { withTimeoutOrNull(DIALOG_DELAY) { work.join() } }
+    if (!work.isCompleted) {
+        // pumps events (including the dispose above) until the work is done
+        dialog.isVisible = true
+    }
+
+    // already complete, so this doesn't block
+    return runBlocking { work.await() }
+}
+
+private const val DIALOG_DELAY = 250L
+
+private val PROGRESS_SCOPE = CoroutineScope(Dispatchers.Default)
@@ -1,6 +1,10 @@
 package io.github.paulgriffith.kindling.utils
 
 import com.formdev.flatlaf.extras.components.FlatTabbedPane
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.launch
+import net.miginfocom.swing.MigLayout
 import java.awt.BorderLayout
 import java.awt.Component
 import java.awt.Container
@@ -9,10 +13,13 @@ import java.awt.event.ComponentEvent
 import javax.swing.Icon
 import javax.swing.JComponent
 import javax.swing.JFrame
+import javax.swing.JLabel
 import javax.swing.JMenu
 import javax.swing.JMenuBar
 import javax.swing.JPanel
 import javax.swing.JPopupMenu
+import javax.swing.JProgressBar
+import javax.swing.SwingConstants
 
 interface PopupMenuCustomizer {
     fun customizePopupMenu(menu: JPopupMenu)
@@ -127,6 +134,52 @@ class TabStrip : FlatTabbedPane() {
         )
     }
 
+    /**
+     * Adds a tab that shows a progress placeholder until [content] completes, then attaches the component it builds.
+     * [content] is expected to do any slow work in the background; the function it produces is called on the EDT.
+     */
+    fun <T> addDeferredTab(
+        tabName: String,
+        tabTooltip: String? = null,
+        icon: Icon? = null,
+        content: Deferred<() -> T>,
+    ) where T : Container, T : FloatableComponent {
+        addTab(
+            tabName,
+            icon,
+            DeferredTab(tabName, content),
+            tabTooltip,
+        )
+    }
+
+    private class DeferredTab(tabName: String, content: Deferred<() -> Component>) : JPanel(MigLayout("fill")) {
+        init {
+            add(JLabel("Loading $tabName...", SwingConstants.CENTER), "pushx, growx, wrap, aligny bottom")
+            add(
+                JProgressBar().apply {
+                    isIndeterminate = true
+                },
+                "center, aligny top, w 50%",
+            )
+
+            EDT_SCOPE.launch {
+                val component = try {
+                    content.await()()
+                } catch (e: CancellationException) {
+                    return@launch
+                } catch (e: Exception) {
+                    LOGGER.error("Unable to load $tabName", e)
+                    JLabel("Unable to load $tabName: ${e.message}", SwingConstants.CENTER)
+                }
+                removeAll()
+                layout = BorderLayout()
+                add(component, BorderLayout.CENTER)
+                revalidate()
+                repaint()
+            }
+        }
+    }
+
     private class LazyTab(supplier: () -> Component) : JPanel(BorderLayout()) {
         private var initialized = false
 
@@ -167,4 +220,8 @@ class TabStrip : FlatTabbedPane() {
             }
         }
     }
+
+    companion object {
+        private val LOGGER = getLogger<TabStrip>()
+    }
 }
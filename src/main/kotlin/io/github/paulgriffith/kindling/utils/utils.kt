@@ -5,7 +5,6 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import org.sqlite.SQLiteDataSource
 import java.io.File
-import java.io.InputStream
 import java.math.BigDecimal
 import java.nio.file.Path
 import java.sql.Connection
@@ -14,7 +13,6 @@ import java.sql.JDBCType
 import java.sql.ResultSet
 import java.sql.Time
 import java.sql.Timestamp
-import java.util.Properties
 import java.util.ServiceLoader
 import javax.swing.table.TableModel
 import kotlin.math.log2
@@ -98,8 +96,6 @@ fun SQLiteConnection(path: Path, readOnly: Boolean = true): Connection {
     }.connection
 }
 
-fun Properties(inputStream: InputStream): Properties = Properties().apply { load(inputStream) }
-
 private val prefix = arrayOf("", "k", "m", "g", "t", "p", "e", "z", "y")
 
 fun Long.toFileSizeLabel(): String = when {
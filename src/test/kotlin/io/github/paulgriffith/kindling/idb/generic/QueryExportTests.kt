@@ -0,0 +1,33 @@
+package io.github.paulgriffith.kindling.idb.generic
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withTimeout
+import java.io.File
+import java.sql.DriverManager
+
+class QueryExportTests : FunSpec(
+    {
+        test("Cancelling an export stops a query that hasn't returned a row") {
+            DriverManager.getConnection("jdbc:sqlite::memory:").use { connection ->
+                val file = File.createTempFile("export", ".csv").apply { deleteOnExit() }
+                // counts forever, so it never produces its single row
+                val sql = "WITH RECURSIVE counter(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM counter) SELECT count(*) FROM counter"
+
+                val export = launch(Dispatchers.IO) {
+                    exportQuery(connection, sql, ExportFormat.CSV, file) {}
+                }
+                delay(500)
+                export.cancel()
+
+                withTimeout(5_000) {
+                    export.join()
+                }
+                export.isCancelled shouldBe true
+            }
+        }
+    },
+)
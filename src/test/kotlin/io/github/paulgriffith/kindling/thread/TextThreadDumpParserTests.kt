@@ -0,0 +1,193 @@
+package io.github.paulgriffith.kindling.thread
+
+import io.github.paulgriffith.kindling.thread.model.TextThreadDumpParser
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.shouldBe
+import kotlin.random.Random
+
+class TextThreadDumpParserTests : FunSpec(
+    {
+        context("Matches the regex parser") {
+            test("Web page") {
+                val dump = resource("legacyWebThreadDump.txt")
+                TextThreadDumpParser.parseWebPage(dump.readLines()) shouldBe RegexThreadDumpParser.parseWebPage(dump)
+            }
+            test("Web page with deadlocks") {
+                val dump = resource("legacyDeadlockThreadDump.txt")
+                TextThreadDumpParser.parseWebPage(dump.readLines()) shouldBe RegexThreadDumpParser.parseWebPage(dump)
+            }
+            test("Script") {
+                val dump = resource("legacyScriptThreadDump.txt")
+                TextThreadDumpParser.parseScript(dump.readLines()) shouldBe RegexThreadDumpParser.parseScript(dump)
+            }
+            test("Script thread without a stack") {
+                val dump = """
+                    |Ignition version: 8.1.1 (b2020120808)
+                    |
+                    |"Signal Dispatcher"
+                    |  CPU: 0.00%
+                    |  java.lang.Thread.State: RUNNABLE
+                    |
+                    |"Finalizer"
+                    |  CPU: 0.00%
+                    |  java.lang.Thread.State: WAITING
+                    |      at java.base@11.0.7/java.lang.Object.wait(Native Method)
+                    |
+                    |
+                """.trimMargin()
+                TextThreadDumpParser.parseScript(dump.readLines()) shouldBe RegexThreadDumpParser.parseScript(dump)
+            }
+            test("Web page thread without a stack") {
+                val dump = """
+                    |"Ignition v7.9.14 (b2020042813)
+                    |
+                    |Daemon Thread [Signal Dispatcher] id=4, (RUNNABLE)
+                    |Thread [webserver-46] id=46, (RUNNABLE) (native)
+                    |    owns monitor: java.lang.Object@4742e437
+                    |    sun.nio.ch.ServerSocketChannelImpl.accept0(Native Method)
+                    |"
+                """.trimMargin()
+                TextThreadDumpParser.parseWebPage(dump.readLines()) shouldBe RegexThreadDumpParser.parseWebPage(dump)
+            }
+            test("Truncated dumps drop the last thread") {
+                val script = resource("legacyScriptThreadDump.txt").trimEnd()
+                TextThreadDumpParser.parseScript(script.readLines()) shouldBe RegexThreadDumpParser.parseScript(script)
+                val web = resource("legacyWebThreadDump.txt").trimEnd('"', '\n')
+                TextThreadDumpParser.parseWebPage(web.readLines()) shouldBe RegexThreadDumpParser.parseWebPage(web)
+            }
+        }
+
+        context("Matches the regex parser on generated dumps") {
+            test("Web page") {
+                val dump = generateWebDump(THREAD_COUNT)
+                val actual = TextThreadDumpParser.parseWebPage(dump.readLines())
+
+                actual shouldHaveSize THREAD_COUNT
+                actual shouldBe RegexThreadDumpParser.parseWebPage(dump)
+            }
+            test("Script") {
+                val dump = generateScriptDump(THREAD_COUNT)
+                val actual = TextThreadDumpParser.parseScript(dump.readLines())
+
+                actual shouldHaveSize THREAD_COUNT
+                actual shouldBe RegexThreadDumpParser.parseScript(dump)
+            }
+        }
+
+        context("Benchmark against the regex parser") {
+            test("Web page").config(enabledIf = { BENCHMARK }) {
+                val dump = generateWebDump(BENCHMARK_THREAD_COUNT)
+                benchmark(
+                    "Web page",
+                    dump,
+                    regex = { RegexThreadDumpParser.parseWebPage(dump) },
+                    text = { TextThreadDumpParser.parseWebPage(dump.readLines()) },
+                )
+            }
+            test("Script").config(enabledIf = { BENCHMARK }) {
+                val dump = generateScriptDump(BENCHMARK_THREAD_COUNT)
+                benchmark(
+                    "Script",
+                    dump,
+                    regex = { RegexThreadDumpParser.parseScript(dump) },
+                    text = { TextThreadDumpParser.parseScript(dump.readLines()) },
+                )
+            }
+        }
+    },
+) {
+    companion object {
+        const val THREAD_COUNT = 200
+
+        /**
+         * The benchmark only runs when asked for, e.g. `./gradlew test -Pbenchmark`.
+         */
+        val BENCHMARK = System.getProperty("kindling.benchmark").toBoolean()
+        const val BENCHMARK_THREAD_COUNT = 5_000
+        private const val WARMUP_RUNS = 3
+        private const val MEASURED_RUNS = 5
+
+        fun resource(name: String): String {
+            return TextThreadDumpParserTests::class.java.getResourceAsStream(name)!!.reader().use { it.readText() }
+        }
+
+        /**
+         * Splits lines the same way [io.github.paulgriffith.kindling.thread.model.ThreadDump.fromStream] does.
+         */
+        fun String.readLines(): Sequence<String> = reader().buffered().lineSequence()
+
+        /**
+         * Times both parsers on [dump], after letting the JIT warm up on each, and prints the median of several runs.
+         */
+        fun benchmark(name: String, dump: String, regex: () -> List<*>, text: () -> List<*>) {
+            text() shouldHaveSize BENCHMARK_THREAD_COUNT
+            text() shouldBe regex()
+
+            val regexMillis = medianMillis(regex)
+            val textMillis = medianMillis(text)
+            println(
+                "$name dump, $BENCHMARK_THREAD_COUNT threads (${dump.length} chars): " +
+                    "regex parser ${regexMillis}ms, line parser ${textMillis}ms",
+            )
+        }
+
+        private fun medianMillis(block: () -> Any?): Long {
+            repeat(WARMUP_RUNS) { block() }
+            val times = LongArray(MEASURED_RUNS) {
+                val start = System.nanoTime()
+                block()
+                (System.nanoTime() - start) / 1_000_000
+            }
+            times.sort()
+            return times[MEASURED_RUNS / 2]
+        }
+
+        val STATES = listOf("RUNNABLE", "WAITING", "TIMED_WAITING", "BLOCKED")
+
+        fun Random.frames(): List<String> = List(nextInt(5, 60)) { i ->
+            "com.example.package$i.SomeClass${nextInt(100)}.method${nextInt(20)}(SomeClass.java:${nextInt(2000)})"
+        }
+
+        fun generateWebDump(threads: Int): String = buildString {
+            val random = Random(1)
+            appendLine("\"Ignition v8.1.7 (b2021060314)")
+            appendLine()
+            repeat(threads) { i ->
+                if (random.nextBoolean()) append("Daemon ")
+                append("Thread [worker-pool-$i] id=$i, (${STATES.random(random)})")
+                if (random.nextInt(10) == 0) append(" (native)")
+                appendLine()
+                if (random.nextInt(4) == 0) {
+                    appendLine("    owns monitor: java.lang.Object@${random.nextInt().toString(16)}")
+                }
+                if (random.nextInt(4) == 0) {
+                    appendLine("    owns synchronizer: java.util.concurrent.locks.ReentrantLock\$NonfairSync@${random.nextInt().toString(16)}")
+                }
+                when (random.nextInt(3)) {
+                    0 -> appendLine("    waiting for: java.lang.Object@${random.nextInt().toString(16)}")
+                    1 -> appendLine("    waiting for: java.lang.Object@${random.nextInt().toString(16)} (owned by ${random.nextInt(threads)})")
+                }
+                for (frame in random.frames()) {
+                    appendLine("    $frame")
+                }
+            }
+            append('"')
+        }
+
+        fun generateScriptDump(threads: Int): String = buildString {
+            val random = Random(2)
+            appendLine("Ignition version: 8.1.1 (b2020120808)")
+            appendLine()
+            repeat(threads) { i ->
+                appendLine("\"worker-pool-$i\" ")
+                appendLine("  CPU: ${random.nextInt(100)}.${random.nextInt(10, 100)}%")
+                appendLine("  java.lang.Thread.State: ${STATES.random(random)}")
+                for (frame in random.frames()) {
+                    appendLine("      at $frame")
+                }
+                appendLine()
+            }
+        }
+    }
+}
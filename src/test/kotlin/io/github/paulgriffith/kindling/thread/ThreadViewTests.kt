@@ -1,40 +1,76 @@
 package io.github.paulgriffith.kindling.thread
 
+import io.github.paulgriffith.kindling.core.ToolOpeningException
+import io.github.paulgriffith.kindling.thread.MultiThreadView.Companion.linkify
+import io.github.paulgriffith.kindling.thread.model.LifespanBuilder
+import io.github.paulgriffith.kindling.thread.model.PoolStatistics
+import io.github.paulgriffith.kindling.thread.model.ProfileReport
+import io.github.paulgriffith.kindling.thread.model.StackFrameTable
+import io.github.paulgriffith.kindling.thread.model.StackTrie
+import io.github.paulgriffith.kindling.thread.model.StuckThreads
+import io.github.paulgriffith.kindling.thread.model.Thread
 import io.github.paulgriffith.kindling.thread.model.Thread.Companion.extractPool
 import io.github.paulgriffith.kindling.thread.model.ThreadDump
+import io.github.paulgriffith.kindling.thread.model.ThreadSearchIndex
+import io.github.paulgriffith.kindling.thread.model.ThreadSession
+import io.github.paulgriffith.kindling.thread.model.WaitForGraph
 import io.kotest.assertions.asClue
+import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.style.FunSpec
 import io.kotest.data.blocking.forAll
 import io.kotest.data.row
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
+import io.kotest.matchers.doubles.shouldBeGreaterThan
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.nulls.shouldNotBeNull
 import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldEndWith
+import io.kotest.matchers.types.shouldBeInstanceOf
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import kotlinx.coroutines.runBlocking
+import java.lang.Thread.State
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentLinkedQueue
+import kotlin.io.path.writeText
 
 class ThreadViewTests : FunSpec(
     {
         test("Thread JSON deserialization") {
-            ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("threadDump.json")!!)!!
+            ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("threadDump.json")!!)
                 .asClue { (version, threads) ->
                     version shouldBe "Dev"
                     threads.size shouldBe 2
                 }
         }
         test("Deadlock JSON deserialization") {
-            ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("deadlockThreadDump.json")!!)!!
+            ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("deadlockThreadDump.json")!!)
                 .asClue { (version, threads, deadlockIds) ->
                     version shouldBe "8.1.16.2022040511"
                     threads.size shouldBe 5
                     deadlockIds.size shouldBe 3
                 }
         }
+        test("JSON with a byte order mark") {
+            val bytes = ThreadViewTests::class.java.getResourceAsStream("threadDump.json")!!.use { it.readBytes() }
+            val withBom = byteArrayOf(0xEF.toByte(), 0xBB.toByte(), 0xBF.toByte()) + bytes
+            ThreadDump.fromStream(withBom.inputStream())
+                .asClue { (version, threads) ->
+                    version shouldBe "Dev"
+                    threads.size shouldBe 2
+                }
+        }
         context("Legacy parsing") {
             test("From webpage") {
-                ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("legacyWebThreadDump.txt")!!)!!
+                ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("legacyWebThreadDump.txt")!!)
                     .asClue { (version, threads) ->
                         version shouldBe "7.9.14 (b2020042813)"
                         threads.size shouldBe 4
                     }
             }
             test("From Auto-Generated Deadlock") {
-                ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("legacyDeadlockThreadDump.txt")!!)!!
+                ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("legacyDeadlockThreadDump.txt")!!)
                     .asClue { (version, threads, deadlockIds) ->
                         version shouldBe "8.1.7 (b2021060314)"
                         threads.size shouldBe 5
@@ -42,7 +78,7 @@ class ThreadViewTests : FunSpec(
                     }
             }
             test("From scripting") {
-                ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("legacyScriptThreadDump.txt")!!)!!
+                ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("legacyScriptThreadDump.txt")!!)
                     .asClue { (version, threads) ->
                         version shouldBe "8.1.1 (b2020120808)"
                         threads.size shouldBe 3
@@ -50,6 +86,293 @@ class ThreadViewTests : FunSpec(
             }
         }
 
+        test("Loading several dumps keeps path order and isolates failures") {
+            val resources = listOf("threadDump.json", "legacyWebThreadDump.txt", "legacyScriptThreadDump.txt").map {
+                Path.of(ThreadViewTests::class.java.getResource(it)!!.toURI())
+            }
+            val broken = Files.createTempFile("kindling", ".txt").apply {
+                writeText("not a thread dump")
+                toFile().deleteOnExit()
+            }
+            val paths = listOf(resources[0], broken, resources[1], resources[2])
+
+            val loaded = ConcurrentLinkedQueue<Path>()
+            val results = runBlocking { MultiThreadView.load(paths, onLoaded = loaded::add) }
+
+            loaded shouldContainExactlyInAnyOrder paths
+            results.map { it.getOrNull()?.version } shouldBe listOf(
+                "Dev",
+                null,
+                "7.9.14 (b2020042813)",
+                "8.1.1 (b2020120808)",
+            )
+            results[1].exceptionOrNull().shouldBeInstanceOf<ToolOpeningException>()
+        }
+
+        test("Interned stacks are shared across dumps") {
+            fun parse() = ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("legacyDeadlockThreadDump.txt")!!)
+            val frames = StackFrameTable()
+            val original = parse()
+            val first = frames.intern(parse())
+            val second = frames.intern(parse())
+
+            first shouldBe original
+            val distinctFrames = original.threads.flatMap { it.stacktrace }.toSet()
+            frames.frameCount shouldBe distinctFrames.size
+            frames.stackCount shouldBe original.threads.map { it.stacktrace }.toSet().size
+            first.threads.zip(second.threads).forEach { (a, b) ->
+                a.stacktrace shouldBeSameInstanceAs b.stacktrace
+            }
+        }
+
+        test("Stack trie merges stacks across dumps") {
+            val dumps = listOf("legacyScriptThreadDump.txt", "legacyDeadlockThreadDump.txt").map {
+                ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream(it)!!)
+            }
+            val trie = runBlocking { StackTrie.build(listOf(dumps[0], null, dumps[1])) }
+
+            val all = trie.weigh { _, _ -> 1.0 }
+            all.total(trie.root) shouldBe dumps.sumOf { it.threads.size }.toDouble()
+
+            val onlySecond = trie.weigh { dumpIndex, _ -> if (dumpIndex == 2) 1.0 else 0.0 }
+            onlySecond.total(trie.root) shouldBe dumps[1].threads.size.toDouble()
+            for (thread in dumps[1].threads.filter { it.stacktrace.isNotEmpty() }) {
+                val outermost = trie.root.children.first { it.frame == thread.stacktrace.last() }
+                onlySecond.total(outermost) shouldBeGreaterThan 0.0
+            }
+        }
+
+        test("Merging a dump into a stack trie matches building it from scratch") {
+            val dumps = listOf("legacyScriptThreadDump.txt", "legacyDeadlockThreadDump.txt").map {
+                ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream(it)!!)
+            }
+            val frames = StackFrameTable()
+            val builder = runBlocking { StackTrie.builder(dumps.take(1), frames) }
+            val before = builder.build()
+            builder.merge(StackTrie.partial(dumps[1], frames))
+            val merged = builder.build()
+            val rebuilt = runBlocking { StackTrie.build(dumps, frames) }
+
+            merged.size shouldBe rebuilt.size
+            merged.root shouldBeSameInstanceAs before.root
+            val mergedWeights = merged.weigh { dumpIndex, _ -> dumpIndex + 1.0 }
+            val rebuiltWeights = rebuilt.weigh { dumpIndex, _ -> dumpIndex + 1.0 }
+            mergedWeights.total(merged.root) shouldBe rebuiltWeights.total(rebuilt.root)
+            for (child in rebuilt.root.children) {
+                val match = merged.root.children.single { it.frame == child.frame }
+                mergedWeights.total(match) shouldBe rebuiltWeights.total(child)
+            }
+            // the older snapshot still only sees its own dump
+            before.weigh { _, _ -> 1.0 }.total(before.root) shouldBe dumps[0].threads.size.toDouble()
+        }
+
+        test("Profile counts recursive methods once per sample") {
+            val dump = ThreadDump(
+                version = "Dev",
+                threads = listOf(
+                    thread(1, state = State.RUNNABLE, cpu = 30.0, stack = listOf("x.C.c()", "x.B.b()", "x.A.a()")),
+                    thread(2, state = State.RUNNABLE, cpu = 10.0, stack = listOf("x.A.a()", "x.B.b()", "x.A.a()")),
+                    thread(3, state = State.WAITING, cpu = 0.0, stack = listOf("x.W.w()", "x.A.a()")),
+                ),
+            )
+            val trie = runBlocking { StackTrie.build(listOf(dump)) }
+            val report = ProfileReport.from(trie) { _, _ -> true }
+
+            report.samples shouldBe 2
+            val methods = report.methods.associateBy { it.method }
+            methods.keys shouldBe setOf("x.A.a", "x.B.b", "x.C.c")
+            methods.getValue("x.A.a").asClue {
+                it.inclusive shouldBe 2
+                it.exclusive shouldBe 1
+                it.exclusiveCpuShare shouldBe 0.25
+            }
+            methods.getValue("x.B.b").exclusive shouldBe 0
+            methods.getValue("x.C.c").inclusiveShare shouldBe 0.5
+            report.packages.single().exclusive shouldBe 2
+            report.pools.sumOf { it.samples } shouldBe 2
+        }
+
+        context("Wait-for graph") {
+            test("Finds the deadlock in a JSON dump") {
+                val graph = WaitForGraph(
+                    ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("deadlockThreadDump.json")!!),
+                )
+                graph.cycles.map { cycle -> cycle.map { graph[it].id }.toSet() } shouldBe listOf(setOf(683, 684))
+                graph.heads.shouldBeEmpty()
+                WaitForGraph.contention(listOf(graph)).first().asClue {
+                    it.lock shouldBe "java.lang.String@38be24e8"
+                    it.waiters shouldBe 2
+                }
+            }
+            test("Finds the deadlock in a legacy dump") {
+                val graph = WaitForGraph(
+                    ThreadDump.fromStream(ThreadViewTests::class.java.getResourceAsStream("legacyDeadlockThreadDump.txt")!!),
+                )
+                graph.cycles.map { cycle -> cycle.map { graph[it].id }.toSet() } shouldBe listOf(setOf(740726, 740720))
+            }
+            test("Strongly connected components") {
+                val edges = listOf(intArrayOf(1), intArrayOf(2), intArrayOf(0, 3), intArrayOf(), intArrayOf(4))
+                WaitForGraph.stronglyConnectedComponents(edges.size, edges::get)
+                    .map { it.toSet() }
+                    .shouldContainExactlyInAnyOrder(setOf(0, 1, 2), setOf(3), setOf(4))
+            }
+        }
+
+        test("Stuck and growing threads") {
+            val stuck = listOf(
+                thread(state = State.RUNNABLE, stack = listOf("a", "b")),
+                thread(state = State.RUNNABLE, stack = listOf("c", "b")),
+                thread(state = State.RUNNABLE, stack = listOf("c", "b")),
+                thread(state = State.RUNNABLE, stack = listOf("c", "b")),
+                null,
+                thread(state = State.RUNNABLE, stack = listOf("c", "b")),
+            )
+            StuckThreads.stuckFor(stuck) shouldBe 3
+            StuckThreads.growingFor(stuck) shouldBe 0
+
+            val waiting = List(4) { thread(state = State.WAITING, stack = listOf("a")) }
+            StuckThreads.stuckFor(waiting) shouldBe 0
+
+            val growing = listOf(
+                thread(state = State.RUNNABLE, stack = listOf("a")),
+                thread(state = State.RUNNABLE, stack = listOf("a", "a")),
+                thread(state = State.RUNNABLE, stack = listOf("a", "a", "a")),
+                thread(state = State.RUNNABLE, stack = listOf("a", "a")),
+            )
+            StuckThreads.growingFor(growing) shouldBe 3
+
+            val findings = StuckThreads.find(listOf(stuck, waiting, growing), minimumDumps = 3)
+            findings.map { it.stuckFor to it.growingFor } shouldBe listOf(3 to 0, 1 to 3)
+        }
+
+        test("Lifespans grow as dumps are appended") {
+            val first = ThreadDump("Dev", listOf(thread(1), thread(2)))
+            val second = ThreadDump("Dev", listOf(thread(2), thread(3)))
+
+            val builder = LifespanBuilder(listOf(first))
+            val before = builder.build()
+            builder.append(null)
+            builder.append(second)
+            val after = builder.build()
+
+            before.map { lifespan -> lifespan.map { it?.id } } shouldBe listOf(listOf(1), listOf(2))
+            after.map { lifespan -> lifespan.map { it?.id } } shouldBe listOf(
+                listOf(1, null, null),
+                listOf(2, null, 2),
+                listOf(null, null, 3),
+            )
+
+            shouldThrow<IllegalArgumentException> {
+                builder.append(ThreadDump("Dev", listOf(thread(3), thread(1, name = "someone-else"))))
+            }
+            builder.size shouldBe 3
+            builder.build()[2] shouldBe after[2]
+        }
+
+        test("Pool statistics per dump") {
+            val dumps = listOf(
+                ThreadDump(
+                    "Dev",
+                    listOf(
+                        thread(1, "webserver-1", State.RUNNABLE, cpu = 5.0),
+                        thread(2, "webserver-2", State.WAITING, cpu = 0.5),
+                        thread(3, "main", State.RUNNABLE, cpu = 1.0),
+                    ),
+                ),
+                null,
+                ThreadDump(
+                    "Dev",
+                    listOf(
+                        thread(1, "webserver-1", State.BLOCKED, cpu = 2.0),
+                        thread(2, "webserver-2", State.BLOCKED, cpu = 2.0),
+                        thread(4, "webserver-4", State.BLOCKED, cpu = 2.0),
+                    ),
+                ),
+            )
+            val statistics = PoolStatistics.from(dumps)
+
+            statistics.loaded.toList() shouldBe listOf(true, false, true)
+            statistics.pools.keys.toList() shouldBe listOf("webserver", null)
+            val webserver = statistics.pools.getValue("webserver")
+            webserver[State.RUNNABLE].toList() shouldBe listOf(1, 0, 0)
+            webserver[State.BLOCKED].toList() shouldBe listOf(0, 0, 3)
+            webserver.cpu.toList() shouldBe listOf(5.5, 0.0, 6.0)
+            webserver.peak shouldBe 3
+            statistics.pools.getValue(null)[State.RUNNABLE].toList() shouldBe listOf(1, 0, 0)
+        }
+
+        test("Sessions round trip dumps, marks and filters") {
+            val paths = listOf("threadDump.json", "legacyWebThreadDump.txt").map {
+                Path.of(ThreadViewTests::class.java.getResource(it)!!.toURI())
+            }
+            val results = runBlocking { MultiThreadView.load(paths) } +
+                Result.failure(ToolOpeningException("Not a thread dump"))
+            val marked = results[1].getOrThrow().threads.first().apply { marked = true }
+            val filters = ThreadSession.Filters(
+                states = listOf("RUNNABLE", "BLOCKED"),
+                systems = listOf(null),
+                pools = listOf("webserver"),
+                query = "jetty",
+                visibleDumps = listOf(0, 1),
+            )
+            val file = Files.createTempFile("kindling", ".${ThreadSession.EXTENSION}").apply {
+                toFile().deleteOnExit()
+            }
+            ThreadSession(listOf("a.json", "b.txt", "c.txt"), results, filters).write(file)
+
+            val read = ThreadSession.read(file)
+            read.names shouldBe listOf("a.json", "b.txt", "c.txt")
+            read.filters shouldBe filters
+            read.results[0].getOrThrow() shouldBe results[0].getOrThrow()
+            read.results[1].getOrThrow() shouldBe results[1].getOrThrow()
+            read.results[1].getOrThrow().threads.filter { it.marked }.map { it.id } shouldBe listOf(marked.id)
+            read.results[2].exceptionOrNull()?.message shouldBe "Not a thread dump"
+        }
+
+        test("Search index matches substrings of names and frames") {
+            val gateway = Thread(
+                id = 1,
+                name = "gateway-shared-exec-engine-1",
+                state = State.RUNNABLE,
+                isDaemon = false,
+                system = "Tags",
+                stacktrace = listOf("at com.inductiveautomation.Tags.poll()", "at java.lang.Thread.run()"),
+            )
+            val webserver = Thread(
+                id = 2,
+                name = "webserver-12",
+                state = State.WAITING,
+                isDaemon = false,
+                stacktrace = listOf("at org.eclipse.jetty.Server.accept()", "at java.lang.Thread.run()"),
+            )
+            val index = ThreadSearchIndex(listOf(ThreadDump("Dev", listOf(gateway, webserver)), null))
+
+            forAll(
+                row("EXEC-ENGINE", listOf(gateway)),
+                row("tags", listOf(gateway)),
+                row("jetty.server", listOf(webserver)),
+                row("thread.run", listOf(gateway, webserver)),
+                row("ru", listOf(gateway, webserver)),
+                row("nothing like this", emptyList()),
+            ) { query, expected ->
+                val matches = index.search(query)
+                listOf(gateway, webserver).filter { it in matches } shouldBe expected
+            }
+        }
+
+        test("Interned frames are linkified once") {
+            val frames = StackFrameTable()
+            val first = frames.intern(listOf("java.base@11.0.15/java.lang.String.valueOf(String.java:1)", "not a frame"))
+            val second = frames.intern(listOf("java.base@11.0.15/java.lang.String.valueOf(String.java:1)"))
+
+            val firstLines = first.linkify("8.1.21")
+            val secondLines = second.linkify("8.1.21")
+            secondLines[0] shouldBeSameInstanceAs firstLines[0]
+            firstLines[0].link.shouldNotBeNull() shouldEndWith "String.html"
+            firstLines[1].link.shouldBeNull()
+            first.toList().linkify("8.1.21") shouldBe firstLines
+        }
+
         test("Thread Pool Parsing Tests") {
             forAll(
                 row("gateway-logging-sqlite-appender", null),
@@ -79,3 +402,18 @@ class ThreadViewTests : FunSpec(
         }
     },
 )
+
+private fun thread(
+    id: Int = 1,
+    name: String = "thread-$id",
+    state: State = State.RUNNABLE,
+    cpu: Double? = null,
+    stack: List<String> = emptyList(),
+) = Thread(
+    id = id,
+    name = name,
+    state = state,
+    isDaemon = false,
+    cpuUsage = cpu,
+    stacktrace = stack,
+)